@@ -1,8 +1,14 @@
 import com.github.gradle.node.npm.task.NpmInstallTask
+import com.github.gradle.node.npm.task.NpmTask
+import groovy.json.JsonSlurper
+import java.net.URI
+import java.security.MessageDigest
+import java.util.Base64
 
 plugins {
     id("org.openrewrite.build.recipe-library") version "latest.release"
     id("com.github.node-gradle.node") version "latest.release"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 // Set as appropriate for your organization
@@ -21,6 +27,8 @@ dependencies {
     implementation(platform("org.openrewrite:rewrite-bom:$rewriteVersion"))
 
     implementation("org.openrewrite:rewrite-core")
+    implementation("org.openrewrite:rewrite-json")
+    implementation("org.openrewrite:rewrite-yaml")
     implementation("org.openrewrite.recipe:rewrite-nodejs:$rewriteNodeJsVersion")
 
     testImplementation("org.openrewrite:rewrite-test")
@@ -29,12 +37,17 @@ dependencies {
 license {
     exclude("**/package.json")
     exclude("**/package-lock.json")
+    exclude("e2e/**")
 }
 
 node {
     nodeProjectDir.set(file("build/resources/main/codemods"))
 }
 
+jmh {
+    profilers.add("gc")
+}
+
 tasks.named("npmInstall") {
     dependsOn(tasks.named("processResources"))
 }
@@ -43,6 +56,83 @@ tasks.named("classes") {
     dependsOn(tasks.named("npmInstall"))
 }
 
+// The end-to-end benchmark installs and updates a sample workspace from a local npm registry that serves the
+// packages pinned by the lockfiles committed in src/test/resources/e2e, so every checkout benchmarks the same tree
+// and needs no network access once the tarballs are downloaded. The lockfiles are only resolved again, from the
+// public registry, by running the e2eRegistryLocks task, after which they are to be committed.
+val e2eDirectory = layout.projectDirectory.dir("src/test/resources/e2e")
+val e2eLockfiles = listOf("workspace", "target").map { e2eDirectory.dir(it).file("package-lock.json") }
+val e2eTarballs = layout.buildDirectory.dir("e2e-registry/tarballs")
+
+val relockE2eRegistry = gradle.startParameter.taskNames.any { it.endsWith("e2eRegistryLocks") }
+val e2eRegistryLocks = listOf("workspace", "target").map { seed ->
+    tasks.register<NpmTask>("e2eRegistryLock${seed.replaceFirstChar(Char::uppercase)}") {
+        workingDir.set(e2eDirectory.dir(seed))
+        args.set(listOf("install", "--package-lock-only", "--ignore-scripts", "--force",
+            "--registry", "https://registry.npmjs.org/"))
+        onlyIf { relockE2eRegistry }
+    }
+}
+
+tasks.register("e2eRegistryLocks") {
+    group = "verification"
+    description = "Resolves the packages the end-to-end benchmark installs into lockfiles again, to be committed. Needs network access."
+    dependsOn(e2eRegistryLocks)
+}
+
+val e2eRegistryTarballs = tasks.register("e2eRegistryTarballs") {
+    group = "verification"
+    description = "Downloads the tarballs pinned by the end-to-end benchmark's committed lockfiles, once."
+    mustRunAfter(e2eRegistryLocks)
+    inputs.files(e2eLockfiles)
+    outputs.dir(e2eTarballs)
+    doLast {
+        val tarballs = e2eTarballs.get().asFile
+        tarballs.mkdirs()
+        for (lockfile in e2eLockfiles.map { it.asFile }) {
+            require(lockfile.isFile) { "$lockfile is missing: run the e2eRegistryLocks task and commit the lockfiles it writes" }
+            val packages = (JsonSlurper().parse(lockfile) as Map<*, *>)["packages"] as Map<*, *>
+            for ((path, entry) in packages) {
+                val resolved = (entry as Map<*, *>)["resolved"] as String? ?: continue
+                val name = (path as String).substringAfterLast("node_modules/")
+                val tarball = tarballs.resolve("${name.replace('/', '+')}-${entry["version"]}.tgz")
+                if (tarball.isFile) {
+                    continue
+                }
+                val bytes = URI(resolved).toURL().openStream().use { it.readBytes() }
+                val integrity = entry["integrity"] as String?
+                if (integrity != null && integrity.startsWith("sha512-")) {
+                    val actual = "sha512-" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-512").digest(bytes))
+                    require(actual == integrity) { "$resolved doesn't match the integrity in $lockfile" }
+                }
+                tarball.writeBytes(bytes)
+            }
+        }
+    }
+}
+
+tasks.named<Test>("test") {
+    useJUnitPlatform {
+        excludeTags("e2e")
+    }
+}
+
+tasks.register<Test>("e2eBenchmark") {
+    group = "verification"
+    description = "Updates a sample workspace with ApplyAngularCLI from a local npm registry and records the wall time of each phase."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("e2e")
+    }
+    dependsOn(e2eRegistryTarballs)
+    systemProperty("e2e.registry.tarballs", e2eTarballs.get().asFile.absolutePath)
+    systemProperty("e2e.reports", layout.buildDirectory.dir("reports/e2e-benchmark").get().asFile.absolutePath)
+    // the npm configuration of installs that don't use the workspace's, which the test points at its registry
+    environment("NPM_CONFIG_USERCONFIG", layout.buildDirectory.file("e2e-registry/npmrc").get().asFile.absolutePath)
+    outputs.upToDateWhen { false }
+}
+
 // We don't care about publishing javadocs anywhere, so don't waste time building them
 tasks.withType<Javadoc>().configureEach {
     enabled = false
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares what it costs to index the files of a working tree in {@link FileIndex} against the
+ * maps of absolute paths to boxed values it replaced. Compare {@code retainedBytes}, from
+ * {@link RetainedHeap}, for the heap each one keeps. The {@code gc} profiler's
+ * {@code gc.alloc.rate.norm} is the bytes allocated per operation, which also counts what the maps
+ * and the index drop as they grow, so it is the allocation cost of building them, not their footprint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileIndexFootprintBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int files;
+
+    Path root;
+    String[] relativePaths;
+
+    @Setup
+    public void setup() {
+        root = Paths.get(System.getProperty("java.io.tmpdir"), "rewrite-codemods-jmh").toAbsolutePath();
+        relativePaths = new String[files];
+        for (int i = 0; i < files; i++) {
+            // a few hundred files per directory, a few levels deep, like an Angular monorepo
+            relativePaths[i] = Paths.get("projects", "lib" + i / 5000, "src", "app", "feature" + i / 200,
+                    "component" + i + ".ts").toString();
+        }
+    }
+
+    @Benchmark
+    public Object maps(RetainedHeap retainedHeap) {
+        Map<Path, Long> timestamps = new ConcurrentHashMap<>();
+        Map<Path, Long> sizes = new ConcurrentHashMap<>();
+        Map<Path, Long> hashes = new ConcurrentHashMap<>();
+        Set<Path> modified = new LinkedHashSet<>();
+        for (int i = 0; i < relativePaths.length; i++) {
+            Path path = root.resolve(relativePaths[i]);
+            timestamps.put(path, 1_700_000_000_000L + i);
+            sizes.put(path, 1024L + i);
+            hashes.put(path, 0x1_0000_0000L + i);
+            if (i % 100 == 0) {
+                modified.add(path);
+            }
+        }
+        Object maps = new Object[]{timestamps, sizes, hashes, modified};
+        retainedHeap.retain(maps);
+        return maps;
+    }
+
+    @Benchmark
+    public Object fileIndex(RetainedHeap retainedHeap) {
+        FileIndex index = new FileIndex();
+        for (int i = 0; i < relativePaths.length; i++) {
+            int id = index.put(relativePaths[i], 1_700_000_000_000L + i, 1024L + i, 0x1_0000_0000L + i);
+            if (i % 100 == 0) {
+                index.markModified(id);
+            }
+        }
+        retainedHeap.retain(index);
+        return index;
+    }
+}
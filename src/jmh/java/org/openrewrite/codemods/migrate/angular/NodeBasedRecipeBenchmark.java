@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrewrite.SourceFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The file-system work {@link NodeBasedRecipe} does around a node run, over synthetic workspaces of
+ * increasing size: writing the source files, handing the tree over from a previous recipe, finding
+ * what node changed, and reading the changed files back. Node itself is stood in for by
+ * {@link SyntheticRepository#runNode}, which changes {@code touchFraction} of the files.
+ * <p>
+ * Run with {@code ./gradlew jmh}. Besides throughput, the {@code gc} profiler reports the allocation
+ * rate and {@link PeakHeap} the peak heap of each phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NodeBasedRecipeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int files;
+
+    @Param({"0.01", "0.1"})
+    double touchFraction;
+
+    Path root;
+    List<SourceFile> sources;
+
+    /**
+     * A tree that node has run in, as a previous recipe leaves it behind.
+     */
+    NodeBasedRecipe.Accumulator ran;
+    List<SourceFile> modifiedSources;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("rewrite-codemods-jmh");
+        sources = SyntheticRepository.generate(files, 42);
+        ran = SyntheticRepository.materialize(Files.createDirectory(root.resolve("ran")), sources);
+        SyntheticRepository.runNode(ran, sources, touchFraction, new Random(42));
+        ran.detectChanges(null);
+
+        modifiedSources = new ArrayList<>();
+        for (SourceFile source : sources) {
+            if (ran.wasModified(source)) {
+                modifiedSources.add(source);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileTrees.delete(root);
+    }
+
+    /**
+     * An empty working directory for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class Target {
+        Path directory;
+
+        @Setup(Level.Invocation)
+        public void create(NodeBasedRecipeBenchmark benchmark) throws IOException {
+            directory = Files.createTempDirectory(benchmark.root, "target");
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            FileTrees.delete(directory);
+        }
+    }
+
+    /**
+     * A copy of {@link #ran} for each invocation, since moving a tree consumes it.
+     */
+    @State(Scope.Thread)
+    public static class Previous {
+        NodeBasedRecipe.Accumulator acc;
+
+        @Setup(Level.Invocation)
+        public void create(NodeBasedRecipeBenchmark benchmark) throws IOException {
+            acc = new NodeBasedRecipe.Accumulator(Files.createTempDirectory(benchmark.root, "previous"),
+                    MaterializationPolicy.all());
+            acc.copyFromPrevious(benchmark.ran.getDirectory());
+            for (Path modified : benchmark.ran.getModified()) {
+                acc.modified(acc.getDirectory().resolve(benchmark.ran.getDirectory().relativize(modified)));
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            FileTrees.delete(acc.getDirectory());
+            FileTrees.delete(acc.getDirectory().resolveSibling(acc.getDirectory().getFileName() + "-journal"));
+        }
+    }
+
+    /**
+     * A materialized tree that node has just run in, with a journal of its changes where supported.
+     * Put back the way it was after each invocation.
+     */
+    @State(Scope.Thread)
+    public static class NodeRun {
+        NodeBasedRecipe.Accumulator acc;
+        List<SourceFile> sources;
+        double touchFraction;
+        Random random = new Random(7);
+
+        List<SourceFile> touched;
+        ChangeJournal journal;
+
+        @Setup(Level.Trial)
+        public void materialize(NodeBasedRecipeBenchmark benchmark) throws IOException {
+            sources = benchmark.sources;
+            touchFraction = benchmark.touchFraction;
+            acc = SyntheticRepository.materialize(Files.createTempDirectory(benchmark.root, "run"), sources);
+        }
+
+        @Setup(Level.Invocation)
+        public void runNode() throws IOException {
+            journal = ChangeJournal.watch(acc.watchedDirectories());
+            touched = SyntheticRepository.runNode(acc, sources, touchFraction, random);
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore() {
+            if (journal != null) {
+                journal.close();
+            }
+            SyntheticRepository.restore(acc, touched);
+        }
+    }
+
+    @Benchmark
+    public NodeBasedRecipe.Accumulator writeSource(Target target, PeakHeap peakHeap) {
+        return SyntheticRepository.materialize(target.directory, sources);
+    }
+
+    @Benchmark
+    public NodeBasedRecipe.Accumulator copyFromPrevious(Target target, PeakHeap peakHeap) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(target.directory, MaterializationPolicy.all());
+        acc.copyFromPrevious(ran.getDirectory());
+        return acc;
+    }
+
+    @Benchmark
+    public NodeBasedRecipe.Accumulator moveFromPrevious(Target target, Previous previous, PeakHeap peakHeap) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(target.directory, MaterializationPolicy.all());
+        acc.moveFromPrevious(previous.acc);
+        return acc;
+    }
+
+    @Benchmark
+    public NodeBasedRecipe.Accumulator detectChangesByScan(NodeRun run, PeakHeap peakHeap) throws IOException {
+        run.acc.detectChanges(null);
+        return run.acc;
+    }
+
+    @Benchmark
+    public NodeBasedRecipe.Accumulator detectChangesByJournal(NodeRun run, PeakHeap peakHeap) throws IOException {
+        run.acc.detectChanges(run.journal == null ? null : run.journal.changed());
+        return run.acc;
+    }
+
+    @Benchmark
+    public void content(Blackhole blackhole, PeakHeap peakHeap) {
+        for (SourceFile source : modifiedSources) {
+            blackhole.consume(ran.content(source));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Reports the heap retained by what a benchmark hands to {@link #retain(Object)} as a secondary
+ * result: the heap in use after a full collection while holding the last object it was handed, less
+ * the heap in use after one before the iteration. Unlike the bytes allocated, it leaves out the
+ * garbage a structure makes while it grows.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class RetainedHeap {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public long retainedBytes;
+
+    private Object retained;
+    private long baseline;
+
+    public void retain(Object retained) {
+        this.retained = retained;
+    }
+
+    @Setup(Level.Iteration)
+    public void baseline() {
+        retained = null;
+        retainedBytes = 0;
+        baseline = usedAfterGc();
+    }
+
+    @TearDown(Level.Iteration)
+    public void record() {
+        retainedBytes = Math.max(0, usedAfterGc() - baseline);
+        retained = null;
+    }
+
+    private static long usedAfterGc() {
+        // a collection may leave garbage behind for the next one, so collect until the heap settles
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = MEMORY.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
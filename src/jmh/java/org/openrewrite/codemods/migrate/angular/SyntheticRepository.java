@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.openrewrite.FileAttributes;
+import org.openrewrite.SourceFile;
+import org.openrewrite.Tree;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.text.PlainText;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * An Angular workspace of generated source files, and a stand-in for node that changes some of them,
+ * so that the file-system work around a node run can be measured without node or a network.
+ */
+final class SyntheticRepository {
+    private static final String TS = "import { Component, Input } from '@angular/core';\n" +
+            "export class FeatureComponent { @Input() value?: string; ngOnInit(): void { this.value ??= ''; } }\n";
+    private static final String HTML = "<div class=\"feature\" *ngIf=\"value\">{{ value | uppercase }}</div>\n";
+    private static final String SCSS = ".feature { display: flex; gap: 8px; color: var(--primary); }\n";
+    private static final String JSON = "{ \"key\": \"value\", \"items\": [1, 2, 3] },\n";
+
+    private SyntheticRepository() {
+    }
+
+    /**
+     * Generate a workspace of {@code files} source files. Sizes follow a log-normal distribution per
+     * kind of file, with medians close to those of real Angular applications, so a few large files
+     * dominate the bytes as they do in practice.
+     */
+    static List<SourceFile> generate(int files, long seed) {
+        Random random = new Random(seed);
+        List<SourceFile> sources = new ArrayList<>(files);
+        sources.add(text("package.json", "{ \"dependencies\": { \"@angular/core\": \"^16.2.0\" } }"));
+        sources.add(text("angular.json", "{ \"projects\": { \"app\": { \"root\": \"\", \"sourceRoot\": \"projects\" } } }"));
+        sources.add(text("tsconfig.json", "{ \"compilerOptions\": { \"strict\": true } }"));
+        for (int i = sources.size(); i < files; i++) {
+            String dir = "projects/lib" + i / 5000 + "/src/app/feature" + i / 200 + "/";
+            double kind = random.nextDouble();
+            if (kind < 0.45) {
+                sources.add(text(dir + "component" + i + ".ts", content(TS, 1500, random)));
+            } else if (kind < 0.60) {
+                sources.add(text(dir + "component" + i + ".spec.ts", content(TS, 2500, random)));
+            } else if (kind < 0.78) {
+                sources.add(text(dir + "component" + i + ".html", content(HTML, 1000, random)));
+            } else if (kind < 0.95) {
+                sources.add(text(dir + "component" + i + ".scss", content(SCSS, 400, random)));
+            } else {
+                sources.add(text(dir + "fixture" + i + ".json", "[" + content(JSON, 800, random) + "{}]"));
+            }
+        }
+        return sources;
+    }
+
+    static NodeBasedRecipe.Accumulator materialize(Path directory, List<SourceFile> sources) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(directory, MaterializationPolicy.all());
+        for (SourceFile source : sources) {
+            acc.materialize(source);
+        }
+        acc.finishMaterialization();
+        return acc;
+    }
+
+    /**
+     * Change {@code fraction} of the source files the way {@code ng update} does: most are rewritten,
+     * some only have their modification time bumped by a formatter that left them as they were, and a
+     * few are rewritten to content of the same size, which only a content hash tells apart.
+     *
+     * @return The source files that were touched, as they were before.
+     */
+    static List<SourceFile> runNode(NodeBasedRecipe.Accumulator acc, List<SourceFile> sources,
+                                    double fraction, Random random) throws IOException {
+        int count = (int) Math.ceil(sources.size() * fraction);
+        List<SourceFile> touched = new ArrayList<>(count);
+        FileTime later = FileTime.fromMillis(System.currentTimeMillis() + 1000);
+        for (int i = 0; i < count; i++) {
+            SourceFile source = sources.get(random.nextInt(sources.size()));
+            Path path = acc.resolvedPath(source);
+            double kind = random.nextDouble();
+            if (kind < 0.7) {
+                Files.write(path, (source.printAll() + "// migrated\n").getBytes(StandardCharsets.UTF_8));
+            } else if (kind < 0.9) {
+                Files.setLastModifiedTime(path, later);
+            } else {
+                byte[] bytes = Files.readAllBytes(path);
+                if (bytes.length > 0) {
+                    bytes[0] = (byte) (bytes[0] == ' ' ? '\t' : ' ');
+                }
+                Files.write(path, bytes);
+            }
+            touched.add(source);
+        }
+        return touched;
+    }
+
+    /**
+     * Put the touched files back the way they were materialized, so the same tree can be run again.
+     */
+    static void restore(NodeBasedRecipe.Accumulator acc, List<SourceFile> touched) {
+        for (SourceFile source : touched) {
+            acc.writeSource(source);
+        }
+        acc.finishMaterialization();
+    }
+
+    private static String content(String line, int medianBytes, Random random) {
+        long bytes = Math.max(line.length(), Math.round(medianBytes * Math.exp(random.nextGaussian() * 0.8)));
+        StringBuilder content = new StringBuilder((int) bytes + line.length());
+        while (content.length() < bytes) {
+            content.append(line);
+        }
+        return content.toString();
+    }
+
+    private static PlainText text(String path, String text) {
+        FileAttributes attributes = new FileAttributes(null, null, null, true, true, false, text.length());
+        return new PlainText(Tree.randomId(), Paths.get(path), Markers.EMPTY, null, false, attributes, null, text, emptyList());
+    }
+}
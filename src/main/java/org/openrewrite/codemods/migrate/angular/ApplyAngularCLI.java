@@ -20,14 +20,23 @@ import lombok.Value;
 import org.jspecify.annotations.Nullable;
 import org.openrewrite.ExecutionContext;
 import org.openrewrite.Option;
+import org.openrewrite.codemods.migrate.angular.table.AngularUpdateResults;
+import org.openrewrite.codemods.migrate.angular.table.AngularUpdateSteps;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Value
 @EqualsAndHashCode(callSuper = true)
 public class ApplyAngularCLI extends NodeBasedRecipe {
+    private static final Pattern MAJOR_VERSION = Pattern.compile("(\\d+)");
+
+    transient AngularUpdateSteps updateSteps = new AngularUpdateSteps(this);
+    transient AngularUpdateResults updateResults = new AngularUpdateResults(this);
 
     @Option(displayName = "Angular version",
             description = "Which version of Angular to upgrade",
@@ -49,18 +58,25 @@ public class ApplyAngularCLI extends NodeBasedRecipe {
     protected List<String> getNpmCommand(Accumulator acc, ExecutionContext ctx) {
         List<String> command = new ArrayList<>();
         command.add("node");
-        command.add("${nodeModules}/node_modules/.bin/ng");
-        command.add("update");
-        command.add(getAngularCliPackage(acc, ctx));
-        command.add("@angular/core@${version}");
-        command.add("--force");
-        command.add("--verbose");
-        command.add("--allow-dirty");
+        command.add("${nodeModules}/node_modules/@angular/cli/bin/ng.js");
+        command.addAll(getCliArguments(acc, ctx));
+        return command;
+    }
 
-        // Replace `${version}` with the `version` value in each command item
-        command.replaceAll(s -> s.replace("${version}", Optional.ofNullable(version).orElse("latest")));
+    @Override
+    protected List<String> getCliArguments(Accumulator acc, ExecutionContext ctx) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("update");
+        arguments.add(getAngularCliPackage(acc, ctx));
+        arguments.add("@angular/core@${version}");
+        arguments.add("--force");
+        arguments.add("--verbose");
+        arguments.add("--allow-dirty");
 
-        return command;
+        // Replace `${version}` with the `version` value in each argument
+        arguments.replaceAll(s -> s.replace("${version}", Optional.ofNullable(version).orElse("latest")));
+
+        return arguments;
     }
 
     @Override
@@ -68,6 +84,47 @@ public class ApplyAngularCLI extends NodeBasedRecipe {
         return "@angular/cli@${version}".replace("${version}", Optional.ofNullable(version).orElse("latest"));
     }
 
+    @Override
+    protected boolean shouldRun(Accumulator acc, Path angularJsonPath, ExecutionContext ctx) {
+        String installedVersion = acc.getAngularCoreVersion(angularJsonPath.getParent());
+        boolean skip = isUpToDate(installedVersion);
+        if (ctx.getCycle() <= 1) {
+            updateSteps.insertRow(ctx, new AngularUpdateSteps.Row(
+                    angularJsonPath.toString(), version, installedVersion, skip));
+        }
+        return !skip;
+    }
+
+    @Override
+    protected boolean mayRun(Accumulator acc, Path workspaceDirectory, ExecutionContext ctx) {
+        return !isUpToDate(acc.getAngularCoreVersion(workspaceDirectory));
+    }
+
+    private boolean isUpToDate(@Nullable String installedVersion) {
+        Integer installedMajor = majorVersion(installedVersion);
+        Integer targetMajor = majorVersion(version);
+        return installedMajor != null && targetMajor != null && installedMajor >= targetMajor;
+    }
+
+    @Override
+    protected NodeOutputListener outputListener(Path angularJsonPath, boolean live, ExecutionContext ctx) {
+        return new NgUpdateOutputParser(live, result -> {
+            // workspaces are updated concurrently
+            synchronized (updateResults) {
+                updateResults.insertRow(ctx, new AngularUpdateResults.Row(angularJsonPath.toString(), result.getKind().name(),
+                        result.getPackageName(), result.getDescription(), result.getOutcome(), result.getDurationMillis()));
+            }
+        });
+    }
+
+    private static @Nullable Integer majorVersion(@Nullable String version) {
+        if (version == null) {
+            return null;
+        }
+        Matcher matcher = MAJOR_VERSION.matcher(version);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
     @Override
     protected boolean useNvmExec(Accumulator acc, ExecutionContext ctx) {
         // parse the version to an integer
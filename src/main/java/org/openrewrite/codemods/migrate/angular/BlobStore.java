@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A content-addressed store of file contents shared by the working trees of many recipe runs, such as
+ * runs over forks and branches of the same application. Each distinct content is stored once, by its
+ * SHA-256, and hardlinked into every tree that has a file with that content.
+ * <p>
+ * Node changes files in place, which would write through to the store and every other tree linked to
+ * it. The node processes of a run therefore preload a script, added to {@code NODE_OPTIONS} by
+ * {@link #nodeOptions}, that replaces a file with more than one link by a copy of its own before
+ * writing to it. Processes other than node must not change the tree in place. Contents that no tree
+ * links to anymore are pruned in the background.
+ */
+final class BlobStore {
+    private static final String PRELOAD = "codemods/break-hardlinks.js";
+    private static final long PRUNE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Set<Path> PRUNED = new HashSet<>();
+    private static final ExecutorService PRUNER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "rewrite-codemods-blob-pruner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static @Nullable Path preload;
+
+    private final Path root;
+    private final AtomicBoolean linkable = new AtomicBoolean(true);
+
+    BlobStore(Path root) {
+        this.root = root;
+    }
+
+    static @Nullable BlobStore create(NodeBasedRecipeExecutionContextView ctx) {
+        Path root = ctx.getBlobStoreDirectory();
+        if (root == null) {
+            return null;
+        }
+        BlobStore blobs = new BlobStore(root);
+        synchronized (PRUNED) {
+            // once per JVM, since pruning walks the whole store
+            if (PRUNED.add(root.toAbsolutePath().normalize())) {
+                PRUNER.submit(() -> blobs.prune(PRUNE_AFTER_MILLIS));
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Replace {@code target} with a hardlink to the stored copy of {@code contents}, storing them if
+     * they aren't yet.
+     *
+     * @return {@code false} if the file system can't link the two, in which case {@code target} is
+     * gone and the caller writes it.
+     */
+    boolean link(byte[] contents, Path target) throws IOException {
+        // a retry finds the tree of the previous attempt, whose file may be linked to the store
+        Files.deleteIfExists(target);
+        if (!linkable.get()) {
+            return false;
+        }
+        Path blob = blob(contents);
+        for (int attempt = 0; ; attempt++) {
+            if (!Files.exists(blob)) {
+                store(blob, contents);
+            }
+            try {
+                Files.createLink(target, blob);
+                return true;
+            } catch (NoSuchFileException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+                // pruned in the meantime
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                linkable.set(false);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Delete the contents that no tree links to anymore, and that were stored long enough ago not to be
+     * about to be linked.
+     *
+     * @return The number of contents deleted.
+     */
+    int prune(long minAgeMillis) {
+        AtomicInteger pruned = new AtomicInteger();
+        long before = System.currentTimeMillis() - minAgeMillis;
+        try {
+            if (!Files.isDirectory(root)) {
+                return 0;
+            }
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    try {
+                        if (attrs.lastModifiedTime().toMillis() <= before &&
+                                ((Number) Files.getAttribute(file, "unix:nlink")).intValue() < 2) {
+                            Files.delete(file);
+                            pruned.incrementAndGet();
+                        }
+                    } catch (IOException | UnsupportedOperationException | IllegalArgumentException ignored) {
+                        // gone already, or no link counts on this platform
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+            // tried again by the next JVM
+        }
+        return pruned.get();
+    }
+
+    /**
+     * @param inherited The {@code NODE_OPTIONS} node would otherwise run with.
+     * @return The {@code NODE_OPTIONS} that preload the script which keeps node from writing to linked files,
+     * and records the files node writes for {@link WorkspaceRuns}.
+     */
+    static String nodeOptions(@Nullable String inherited) throws IOException {
+        String require = "--require " + preload();
+        return inherited == null || inherited.trim().isEmpty() ? require : require + " " + inherited.trim();
+    }
+
+    private static synchronized Path preload() throws IOException {
+        if (preload == null || !Files.isRegularFile(preload)) {
+            Path copy = Files.createTempFile("break-hardlinks", ".js");
+            try (InputStream in = BlobStore.class.getClassLoader().getResourceAsStream(PRELOAD)) {
+                if (in == null) {
+                    throw new FileNotFoundException(PRELOAD);
+                }
+                Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            copy.toFile().deleteOnExit();
+            preload = copy;
+        }
+        return preload;
+    }
+
+    private Path blob(byte[] contents) {
+        String sha256 = sha256(contents);
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2));
+    }
+
+    private static void store(Path blob, byte[] contents) throws IOException {
+        Files.createDirectories(blob.getParent());
+        Path temp = Files.createTempFile(blob.getParent(), blob.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, contents);
+            // another run may store the same contents at the same time
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String sha256(byte[] contents) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(contents);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Records which files in the working tree were created, modified or deleted while node runs, so
+ * that only those files have to be checked afterwards. Only used on Linux, where the JDK's
+ * {@link WatchService} is backed by inotify; elsewhere it polls too slowly to be of use.
+ * <p>
+ * Events reach the watch service some time after the change. To know when all the events of changes
+ * made so far have arrived, the journal writes a sentinel file into a watched directory and waits for
+ * its event, since inotify delivers the events of one watch service in the order the changes were made.
+ */
+class ChangeJournal implements Closeable {
+    private static final String SENTINEL_PREFIX = ".rewrite-change-journal-";
+    private static final long SENTINEL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * Where sentinels are written, or {@code null} if no directory is watched.
+     */
+    private @Nullable Path sentinelDirectory;
+
+    private ChangeJournal(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * @return A journal watching {@code dirs}, or {@code null} if the platform can't watch them all,
+     * in which case every file has to be checked.
+     */
+    static @Nullable ChangeJournal watch(Collection<Path> dirs) {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux") || dirs.isEmpty()) {
+            return null;
+        }
+
+        ChangeJournal journal = null;
+        try {
+            journal = new ChangeJournal(FileSystems.getDefault().newWatchService());
+            for (Path dir : dirs) {
+                if (Files.isDirectory(dir)) {
+                    journal.directories.put(dir.register(journal.watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                    if (journal.sentinelDirectory == null) {
+                        journal.sentinelDirectory = dir;
+                    }
+                }
+            }
+            return journal;
+        } catch (IOException e) {
+            // typically the inotify watch limit, which a full scan doesn't depend on
+            if (journal != null) {
+                journal.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The paths that saw any change since the journal started, or {@code null} if events
+     * were lost and every file has to be checked.
+     */
+    @Nullable
+    synchronized Set<Path> changed() {
+        Set<Path> changed = new HashSet<>();
+        if (sentinelDirectory == null) {
+            return changed;
+        }
+        // named anew each time, so that the events of earlier sentinels aren't taken for its own
+        Path sentinel = sentinelDirectory.resolve(SENTINEL_PREFIX + UUID.randomUUID());
+        try {
+            // the events of changes made before the sentinel was written arrive before its own
+            Files.write(sentinel, new byte[0]);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SENTINEL_TIMEOUT_MILLIS);
+            boolean sentinelSeen = false;
+            WatchKey key;
+            while ((key = sentinelSeen ? watchService.poll() :
+                    watchService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                Path dir = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        return null;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (path.equals(sentinel)) {
+                        sentinelSeen = true;
+                    } else if (!path.getFileName().toString().startsWith(SENTINEL_PREFIX)) {
+                        changed.add(path);
+                    }
+                }
+                if (!key.reset()) {
+                    // the directory itself was deleted or moved
+                    return null;
+                }
+            }
+            return sentinelSeen ? changed : null;
+        } catch (IOException | ClosedWatchServiceException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            try {
+                // its event is left for the next call, which tells it from the tree's own files by name
+                Files.deleteIfExists(sentinel);
+            } catch (IOException ignored) {
+                // removed along with the working tree
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
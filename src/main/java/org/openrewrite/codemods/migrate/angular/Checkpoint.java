@@ -0,0 +1,489 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What a {@link NodeBasedRecipe} run has done so far, saved to its working directory after each phase,
+ * so that a retry of a failed run can pick up where it left off rather than start over:
+ * <ul>
+ *     <li>a file written from a source file that prints the same, or copied from a previous recipe's file
+ *     that hasn't changed since, and not touched since, is not written again,</li>
+ *     <li>the dependencies of a workspace are not installed again if its {@code package.json},
+ *     {@code package-lock.json} and {@code .npmrc} are the same as when they were installed, and the
+ *     codemod hasn't run on them since,</li>
+ *     <li>a run of the same recipe with the same options that completed on a tree of the same source
+ *     files restores the changes node made from the checkpoint instead of running node again.</li>
+ * </ul>
+ * Each recipe of a run has a checkpoint directory of its own. The tree manifest is in {@code tree.json},
+ * and the install and completion state, which is saved more often, in {@code state.json}.
+ */
+final class Checkpoint {
+    private static final int VERSION = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path directory;
+
+    /**
+     * The name and options of the recipe, which a completed run must have had to be restored.
+     */
+    private final String recipe;
+
+    /**
+     * The tree as the previous attempt left it, by path.
+     */
+    private final Map<String, Entry> previousFiles;
+    private final @Nullable String previousRecipe;
+    private final @Nullable String previousAccumulator;
+    private final @Nullable NodePhase previousPhase;
+
+    /**
+     * Digests of the printed source files written by this attempt, by path.
+     */
+    private final Map<String, String> sourceDigests = new ConcurrentHashMap<>();
+
+    /**
+     * When the files copied from the previous recipe's tree by this attempt were last modified there, by path.
+     */
+    private final Map<String, Long> sourceTimestamps = new ConcurrentHashMap<>();
+
+    /**
+     * How many files of this attempt come from the same source as in the previous one, whether or not
+     * they had to be written again, and how many don't.
+     */
+    private final AtomicInteger sameSource = new AtomicInteger();
+    private final AtomicInteger otherSource = new AtomicInteger();
+
+    private final Map<String, String> installed;
+    private final List<String> modified;
+    private boolean completed;
+
+    private Checkpoint(Path directory, String recipe, Map<String, Entry> previousFiles, @Nullable String previousRecipe,
+                       @Nullable String previousAccumulator, @Nullable NodePhase previousPhase,
+                       Map<String, String> installed, List<String> modified, boolean completed) {
+        this.directory = directory;
+        this.recipe = recipe;
+        this.previousFiles = previousFiles;
+        this.previousRecipe = previousRecipe;
+        this.previousAccumulator = previousAccumulator;
+        this.previousPhase = previousPhase;
+        this.installed = installed;
+        this.modified = modified;
+        this.completed = completed;
+    }
+
+    /**
+     * Load the checkpoint of a previous attempt from {@code directory}, if there is a readable one.
+     *
+     * @param recipe The name and options of the recipe the checkpoint is for.
+     */
+    static Checkpoint open(Path directory, String recipe) {
+        Map<String, Entry> files = new HashMap<>();
+        String previousRecipe = null;
+        String accumulator = null;
+        NodePhase phase = null;
+        Map<String, String> installed = new TreeMap<>();
+        List<String> modified = new ArrayList<>();
+        boolean completed = false;
+        try {
+            Path tree = directory.resolve("tree.json");
+            if (Files.isRegularFile(tree)) {
+                try (JsonParser parser = MAPPER.getFactory().createParser(tree.toFile())) {
+                    JsonNode header = null;
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String field = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("files".equals(field)) {
+                                // read an entry at a time, since the tree of a large repository has many
+                                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                    JsonNode file = MAPPER.readTree(parser);
+                                    files.put(file.path("path").asText(), new Entry(
+                                            file.hasNonNull("digest") ? file.get("digest").asText() : null,
+                                            file.path("timestamp").asLong(FileIndex.UNKNOWN),
+                                            file.path("size").asLong(FileIndex.UNKNOWN),
+                                            file.path("hash").asLong(FileIndex.UNKNOWN),
+                                            file.path("sourceTimestamp").asLong(FileIndex.UNKNOWN)));
+                                }
+                            } else if ("header".equals(field)) {
+                                header = MAPPER.readTree(parser);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    if (header != null && header.path("version").asInt() == VERSION) {
+                        previousRecipe = header.path("recipe").asText(null);
+                        accumulator = header.path("accumulator").toString();
+                        phase = NodePhase.valueOf(header.path("phase").asText());
+                    } else {
+                        files.clear();
+                    }
+                }
+            }
+
+            Path state = directory.resolve("state.json");
+            if (phase != null && Files.isRegularFile(state)) {
+                JsonNode json = MAPPER.readTree(state.toFile());
+                if (json.path("version").asInt() == VERSION) {
+                    json.path("installed").fields().forEachRemaining(e -> installed.put(e.getKey(), e.getValue().asText()));
+                    json.path("modified").forEach(path -> modified.add(path.asText()));
+                    completed = json.path("completed").asBoolean();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // unreadable, so start over
+            files.clear();
+            previousRecipe = null;
+            accumulator = null;
+            phase = null;
+            installed.clear();
+            modified.clear();
+            completed = false;
+        }
+        return new Checkpoint(directory, recipe, files, previousRecipe, accumulator, phase, installed, modified, completed);
+    }
+
+    /**
+     * @param printed The source file as printed. Its id is no match, since a source file that an earlier
+     *                recipe edited keeps it.
+     * @return The file the previous attempt wrote from a source file that printed the same, if it is
+     * still as that attempt left it.
+     */
+    @Nullable
+    Entry reusableSource(String path, byte[] printed, Path file) throws IOException {
+        String digest = digest(printed);
+        sourceDigests.put(path, digest);
+        Entry entry = previousFiles.get(path);
+        return reusable(entry != null && digest.equals(entry.getDigest()), entry, file);
+    }
+
+    /**
+     * @return The file the previous attempt copied from the previous recipe's tree, if neither it nor
+     * the file it was copied from have changed since.
+     */
+    @Nullable
+    Entry reusableCopy(String path, long sourceTimestamp, Path file) throws IOException {
+        sourceTimestamps.put(path, sourceTimestamp);
+        Entry entry = previousFiles.get(path);
+        return reusable(entry != null && entry.getSourceTimestamp() == sourceTimestamp, entry, file);
+    }
+
+    private @Nullable Entry reusable(boolean same, @Nullable Entry entry, Path file) throws IOException {
+        if (!same || entry == null) {
+            otherSource.incrementAndGet();
+            return null;
+        }
+        sameSource.incrementAndGet();
+        // a file that node changed, or that was touched since, is written again
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (entry.getTimestamp() != FileIndex.UNKNOWN && attrs.isRegularFile() &&
+                    attrs.lastModifiedTime().toMillis() == entry.getTimestamp() && attrs.size() == entry.getSize()) {
+                return entry;
+            }
+        } catch (NoSuchFileException ignored) {
+            // written again
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether this attempt found anything of a previous one to resume from.
+     */
+    boolean isResumed() {
+        return previousPhase != null;
+    }
+
+    /**
+     * Save the manifest of the tree once it is in place, before node runs on it.
+     *
+     * @param phase {@link NodePhase#MATERIALIZE} or {@link NodePhase#HAND_OFF}.
+     */
+    void saveTree(NodePhase phase, NodeBasedRecipe.Accumulator acc) {
+        // a run on a different tree is of no use to this one
+        completed = completed && sameTree(acc);
+        try {
+            Path tree = directory.resolve("tree.json");
+            Path temp = directory.resolve("tree.json.tmp");
+            try (OutputStream out = Files.newOutputStream(temp);
+                 JsonGenerator json = MAPPER.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                ObjectNode header = MAPPER.createObjectNode();
+                header.put("version", VERSION);
+                header.put("phase", phase.name());
+                header.put("recipe", recipe);
+                header.set("accumulator", accumulator(acc));
+                json.writeFieldName("header");
+                MAPPER.writeTree(json, header);
+                json.writeArrayFieldStart("files");
+                FileIndex files = acc.files;
+                for (int id = 0, count = files.size(); id < count; id++) {
+                    String path = files.path(id);
+                    json.writeStartObject();
+                    json.writeStringField("path", path);
+                    String sourceDigest = sourceDigests.get(path);
+                    if (sourceDigest != null) {
+                        json.writeStringField("digest", sourceDigest);
+                    }
+                    json.writeNumberField("timestamp", files.timestamp(id));
+                    json.writeNumberField("size", files.size(id));
+                    json.writeNumberField("hash", files.hash(id));
+                    json.writeNumberField("sourceTimestamp", sourceTimestamps.getOrDefault(path, FileIndex.UNKNOWN));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            Files.move(temp, tree, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saveState();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Whether the dependencies of the workspace in {@code dir} were installed by a previous
+     * attempt from the same manifests and are still there.
+     */
+    boolean isInstalled(Path angularJsonPath, Path dir) {
+        String fingerprint = installed.get(angularJsonPath.toString());
+        return fingerprint != null && Files.isDirectory(dir.resolve("node_modules")) && fingerprint.equals(fingerprint(dir));
+    }
+
+    synchronized void installed(Path angularJsonPath, Path dir) {
+        installed.put(angularJsonPath.toString(), fingerprint(dir));
+        saveState();
+    }
+
+    /**
+     * Forget the install of a workspace, since the codemod about to run in it may change its dependencies.
+     */
+    synchronized void running(Path angularJsonPath) {
+        if (installed.remove(angularJsonPath.toString()) != null) {
+            saveState();
+        }
+    }
+
+    /**
+     * @return Whether a previous attempt of the same recipe completed on a tree of the same source files as
+     * this attempt's, in which case {@link #restore} brings this attempt's tree to where that attempt left it.
+     */
+    boolean isCompleted(NodeBasedRecipe.Accumulator acc) {
+        return completed && sameTree(acc);
+    }
+
+    private boolean sameTree(NodeBasedRecipe.Accumulator acc) {
+        return recipe.equals(previousRecipe) &&
+               otherSource.get() == 0 && sameSource.get() == previousFiles.size() && acc.files.size() == previousFiles.size() &&
+               accumulator(acc).toString().equals(previousAccumulator);
+    }
+
+    /**
+     * Save the files node changed, so that a retry on the same tree can restore them.
+     */
+    void complete(NodeBasedRecipe.Accumulator acc) {
+        try {
+            Path changes = directory.resolve("changes");
+            deleteRecursively(changes);
+            modified.clear();
+            BitSet ids = acc.files.modified();
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                String path = acc.files.path(id);
+                Path file = acc.files.resolve(acc.getDirectory(), id);
+                if (Files.exists(file)) {
+                    Path saved = changes.resolve(path);
+                    Files.createDirectories(saved.getParent());
+                    Files.copy(file, saved, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                modified.add(path);
+            }
+            completed = true;
+            saveState();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bring the tree to where the previous attempt's run left it, and mark the files it changed.
+     */
+    void restore(NodeBasedRecipe.Accumulator acc) {
+        try {
+            Path changes = directory.resolve("changes");
+            for (String path : modified) {
+                Path saved = changes.resolve(path);
+                Path file = acc.getDirectory().resolve(path);
+                if (Files.exists(saved)) {
+                    // as node left it, down to the modification time, which the next recipe's checkpoint compares
+                    Files.copy(saved, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+                int id = acc.files.id(path);
+                if (id >= 0) {
+                    acc.files.markModified(id);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Delete files the previous attempt left in the tree that are not part of it, like those created by
+     * a codemod that failed halfway, leaving installed dependencies alone.
+     */
+    void removeStrayFiles(NodeBasedRecipe.Accumulator acc) {
+        Path root = acc.getDirectory();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.getFileName() != null && "node_modules".equals(dir.getFileName().toString()) ?
+                            FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (acc.files.id(root.relativize(file).toString()) < 0) {
+                        Files.delete(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void saveState() {
+        try {
+            ObjectNode state = MAPPER.createObjectNode();
+            state.put("version", VERSION);
+            ObjectNode installs = state.putObject("installed");
+            installed.forEach(installs::put);
+            modified.forEach(state.putArray("modified")::add);
+            state.put("completed", completed);
+            Path temp = directory.resolve("state.json.tmp");
+            MAPPER.writeValue(temp.toFile(), state);
+            Files.move(temp, directory.resolve("state.json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return What the scan found, which a run on the same source files finds again.
+     */
+    private static ObjectNode accumulator(NodeBasedRecipe.Accumulator acc) {
+        ObjectNode json = MAPPER.createObjectNode();
+        ArrayNode angularJsonPaths = json.putArray("angularJsonPaths");
+        acc.getAngularJsonPaths().forEach(path -> angularJsonPaths.add(path.toString()));
+        ObjectNode angularCoreVersions = json.putObject("angularCoreVersions");
+        new TreeMap<>(acc.angularCoreVersions).forEach((dir, version) -> angularCoreVersions.put(dir.toString(), version));
+        ArrayNode projectRoots = json.putArray("projectRoots");
+        new TreeSet<>(acc.projectRoots).forEach(root -> projectRoots.add(root.toString()));
+        ObjectNode extensionCounts = json.putObject("extensionCounts");
+        new TreeMap<>(acc.extensionCounts).forEach((extension, count) -> extensionCounts.put(extension, count.get()));
+        json.put("skippedFiles", acc.getSkippedFiles());
+        json.put("skippedBytes", acc.getSkippedBytes());
+        return json;
+    }
+
+    private static String fingerprint(Path dir) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String manifest : Arrays.asList("package.json", "package-lock.json", ".npmrc")) {
+                Path file = dir.resolve(manifest);
+                if (Files.isRegularFile(file)) {
+                    digest.update(Files.readAllBytes(file));
+                }
+                digest.update((byte) 0);
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String digest(byte[] contents) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MessageDigest.getInstance("SHA-256").digest(contents));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, @Nullable IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Value
+    static class Entry {
+        /**
+         * The digest of the printed source file the file was written from, if it was.
+         */
+        @Nullable
+        String digest;
+
+        long timestamp;
+        long size;
+        long hash;
+
+        /**
+         * When the file a copied file was copied from was last modified.
+         */
+        long sourceTimestamp;
+    }
+}
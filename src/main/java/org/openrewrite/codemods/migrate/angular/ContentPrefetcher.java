@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.SourceFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the files node modified on a bounded pool of threads as soon as node has run, so that the
+ * edit phase, which asks for them one at a time in the order of the source files, finds them in
+ * memory. Files are read ahead in the order of the {@link FileIndex}, which is close to that order,
+ * until their estimated size reaches a budget. Every file taken out of the cache makes room for the
+ * next. Large files are memory-mapped rather than copied onto the heap. Files that {@link ModifiedFileParser}
+ * can parse are parsed on the same threads, in the charset of their source file, once they have been read.
+ */
+final class ContentPrefetcher {
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())), r -> {
+                Thread thread = new Thread(r, "rewrite-codemods-prefetch-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path root;
+    private final FileIndex files;
+    private final long maxBytes;
+    private final Map<String, Charset> charsets;
+
+    @Nullable
+    private final ExecutionContext parseCtx;
+
+    private final BitSet modified;
+    private final Map<String, Prefetch> prefetched = new HashMap<>();
+
+    private int next;
+    private long bytes;
+
+    private ContentPrefetcher(Path root, FileIndex files, long maxBytes, Map<String, Charset> charsets,
+                              @Nullable ExecutionContext parseCtx) {
+        this.root = root;
+        this.files = files;
+        this.maxBytes = maxBytes;
+        this.charsets = charsets;
+        this.parseCtx = parseCtx;
+        this.modified = files.modified();
+        this.next = modified.nextSetBit(0);
+    }
+
+    /**
+     * Start reading the modified files of the tree in {@code root}.
+     *
+     * @param maxBytes How much of them to hold in memory at a time.
+     * @param charsets The charsets of the files to parse, by path, where they aren't UTF-8.
+     * @param parseCtx The context to parse files in, or {@code null} to not parse them.
+     */
+    static ContentPrefetcher start(Path root, FileIndex files, long maxBytes, Map<String, Charset> charsets,
+                                   @Nullable ExecutionContext parseCtx) {
+        ContentPrefetcher prefetcher = new ContentPrefetcher(root, files, maxBytes, charsets, parseCtx);
+        prefetcher.fill();
+        return prefetcher;
+    }
+
+    /**
+     * Take the contents of a file out of the cache, waiting for them if they are still being read.
+     *
+     * @return The file, or {@code null} if it wasn't read ahead or couldn't be read, in which case the
+     * caller reads it itself.
+     */
+    @Nullable
+    Prefetched take(String path) {
+        Prefetch prefetch;
+        synchronized (this) {
+            prefetch = prefetched.remove(path);
+            if (prefetch == null) {
+                return null;
+            }
+            bytes -= prefetch.size;
+            fill();
+        }
+        try {
+            return prefetch.contents.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Stop reading ahead, before the tree is handed to another recipe that may change its files. What
+     * was read is kept, except for memory-mapped files, which would show those changes.
+     */
+    synchronized void stop() {
+        next = -1;
+        for (Iterator<Prefetch> i = prefetched.values().iterator(); i.hasNext(); ) {
+            Prefetch prefetch = i.next();
+            Prefetched contents;
+            try {
+                contents = prefetch.contents.get();
+            } catch (ExecutionException e) {
+                contents = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                contents = null;
+            }
+            if (contents == null || contents.getContents() instanceof MappedByteBuffer) {
+                i.remove();
+                bytes -= prefetch.size;
+            }
+        }
+    }
+
+    private synchronized void fill() {
+        // read at least one file at a time, however large
+        while (next >= 0 && (bytes < maxBytes || prefetched.isEmpty())) {
+            int id = next;
+            next = modified.nextSetBit(id + 1);
+            long size = Math.max(0, files.size(id));
+            String path = files.path(id);
+            Path file = files.resolve(root, id);
+            prefetched.put(path, new Prefetch(size, CompletableFuture.supplyAsync(() -> read(path, file), POOL)));
+            bytes += size;
+        }
+    }
+
+    private Prefetched read(String path, Path file) {
+        ByteBuffer contents = read(file);
+        SourceFile parsed = null;
+        Path sourcePath = Paths.get(path);
+        if (parseCtx != null && ModifiedFileParser.canParse(sourcePath)) {
+            Charset charset = charsets.getOrDefault(path, StandardCharsets.UTF_8);
+            String text = charset.decode(contents.duplicate()).toString();
+            parsed = ModifiedFileParser.parse(sourcePath, text, charset, parseCtx);
+        }
+        return new Prefetched(contents, parsed);
+    }
+
+    private static ByteBuffer read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                // keep reading
+            }
+            contents.flip();
+            return contents;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Value
+    static class Prefetched {
+        ByteBuffer contents;
+
+        /**
+         * The file parsed in the charset of its source file, if it has a parser and parses.
+         */
+        @Nullable
+        SourceFile parsed;
+    }
+
+    private static final class Prefetch {
+        final long size;
+        final CompletableFuture<Prefetched> contents;
+
+        Prefetch(long size, CompletableFuture<Prefetched> contents) {
+            this.size = size;
+            this.contents = contents;
+        }
+    }
+}
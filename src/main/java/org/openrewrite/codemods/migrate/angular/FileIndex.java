@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The files of a working tree, with what they looked like before node ran and whether node modified
+ * them. Built for repositories with hundreds of thousands of files: a file is a directory id and a
+ * file name, with directories interned, and its state lives in primitive arrays indexed by file id
+ * rather than in maps of absolute paths to boxed values.
+ * <p>
+ * Paths are relative to the working tree, as returned by {@link Path#toString()}.
+ */
+final class FileIndex {
+    /**
+     * The value of a timestamp, size or hash that isn't known. A timestamp is unknown when the file
+     * didn't exist before node ran.
+     */
+    static final long UNKNOWN = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<String, Integer> directoryIds;
+    private final List<String> directories;
+
+    private int count;
+    private int[] directory;
+    private String[] names;
+    private long[] timestamps;
+    private long[] sizes;
+    private long[] hashes;
+    private final BitSet modified;
+
+    /**
+     * Open addressing from a file's directory and name to its id plus one, with zero marking an empty slot.
+     */
+    private int[] table;
+
+    FileIndex() {
+        directoryIds = new HashMap<>();
+        directories = new ArrayList<>();
+        directory = new int[INITIAL_CAPACITY];
+        names = new String[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        sizes = new long[INITIAL_CAPACITY];
+        hashes = new long[INITIAL_CAPACITY];
+        modified = new BitSet();
+        table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    private FileIndex(FileIndex other) {
+        directoryIds = new HashMap<>(other.directoryIds);
+        directories = new ArrayList<>(other.directories);
+        count = other.count;
+        directory = other.directory.clone();
+        names = other.names.clone();
+        timestamps = other.timestamps.clone();
+        sizes = other.sizes.clone();
+        hashes = other.hashes.clone();
+        modified = (BitSet) other.modified.clone();
+        table = other.table.clone();
+    }
+
+    synchronized FileIndex copy() {
+        return new FileIndex(this);
+    }
+
+    /**
+     * Add a file, or replace what is known about it.
+     *
+     * @return The id of the file.
+     */
+    synchronized int put(String relativePath, long timestamp, long size, long hash) {
+        int id = id(relativePath);
+        if (id < 0) {
+            int slash = relativePath.lastIndexOf(File.separatorChar);
+            String dir = slash < 0 ? "" : relativePath.substring(0, slash);
+            String name = relativePath.substring(slash + 1);
+
+            if (count == names.length) {
+                grow();
+            }
+            id = count++;
+            Integer dirId = directoryIds.get(dir);
+            if (dirId == null) {
+                dirId = directories.size();
+                directoryIds.put(dir, dirId);
+                directories.add(dir);
+            }
+            directory[id] = dirId;
+            names[id] = name;
+            insert(id);
+        }
+        timestamps[id] = timestamp;
+        sizes[id] = size;
+        hashes[id] = hash;
+        modified.clear(id);
+        return id;
+    }
+
+    /**
+     * @return The id of the file, or {@code -1} if it isn't in the index.
+     */
+    synchronized int id(String relativePath) {
+        int slash = relativePath.lastIndexOf(File.separatorChar);
+        Integer dirId = directoryIds.get(slash < 0 ? "" : relativePath.substring(0, slash));
+        if (dirId == null) {
+            return -1;
+        }
+        String name = relativePath.substring(slash + 1);
+        int mask = table.length - 1;
+        for (int slot = hash(dirId, name) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (directory[id] == dirId && names[id].equals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized String path(int id) {
+        String dir = directories.get(directory[id]);
+        return dir.isEmpty() ? names[id] : dir + File.separatorChar + names[id];
+    }
+
+    synchronized Path resolve(Path root, int id) {
+        return root.resolve(directories.get(directory[id])).resolve(names[id]);
+    }
+
+    /**
+     * @return The directories containing files, relative to the working tree.
+     */
+    synchronized List<String> directories() {
+        return new ArrayList<>(directories);
+    }
+
+    synchronized long timestamp(int id) {
+        return timestamps[id];
+    }
+
+    synchronized long size(int id) {
+        return sizes[id];
+    }
+
+    synchronized long hash(int id) {
+        return hashes[id];
+    }
+
+    synchronized void markModified(int id) {
+        modified.set(id);
+    }
+
+    synchronized boolean isModified(int id) {
+        return modified.get(id);
+    }
+
+    synchronized int modifiedCount() {
+        return modified.cardinality();
+    }
+
+    synchronized BitSet modified() {
+        return (BitSet) modified.clone();
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        directory = Arrays.copyOf(directory, capacity);
+        names = Arrays.copyOf(names, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+
+        table = new int[capacity * 2];
+        for (int id = 0; id < count; id++) {
+            insert(id);
+        }
+    }
+
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = hash(directory[id], names[id]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int hash(int dirId, String name) {
+        int h = dirId * 31 + name.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
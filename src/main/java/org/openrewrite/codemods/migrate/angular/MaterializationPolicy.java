@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Decides which source files a {@link NodeBasedRecipe} writes to its working tree. Files the node
+ * tooling never reads don't need to be printed and written at all. A file that isn't written can't
+ * be changed by node either, so any policy but {@link #all()}, the default, is opt-in.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class MaterializationPolicy {
+    private static final MaterializationPolicy ALL = new MaterializationPolicy(null, Collections.emptySet(),
+            Collections.emptySet());
+
+    private static final MaterializationPolicy ANGULAR = new MaterializationPolicy(
+            new HashSet<>(Arrays.asList("ts", "mts", "cts", "html", "scss", "sass", "less", "css", "json", "md")),
+            new HashSet<>(Arrays.asList("js", "mjs", "cjs", "yml", "yaml")),
+            new HashSet<>(Arrays.asList("package.json", "package-lock.json", "npm-shrinkwrap.json", "yarn.lock",
+                    "pnpm-lock.yaml", ".npmrc", ".yarnrc", ".yarnrc.yml", ".nvmrc", ".node-version",
+                    ".browserslistrc", "browserslist", ".gitignore", ".editorconfig", ".eslintignore",
+                    ".prettierrc", ".prettierignore", "angular.json")));
+
+    /**
+     * Extensions of files written when they belong to a workspace project, or {@code null} to write
+     * every file.
+     */
+    private final @Nullable Set<String> projectExtensions;
+
+    /**
+     * Extensions of files that are always written, like the JavaScript and YAML configuration of the
+     * build, test and lint tools that migrations update.
+     */
+    private final Set<String> extensions;
+
+    /**
+     * Names of files that are always written.
+     */
+    private final Set<String> fileNames;
+
+    public static MaterializationPolicy all() {
+        return ALL;
+    }
+
+    /**
+     * Manifests, lockfiles, npm, git and editor configuration, {@code angular.json}, {@code tsconfig}
+     * and {@code .eslintrc} files, JavaScript and YAML files, plus TypeScript, templates, stylesheets,
+     * JSON and Markdown under the projects of the workspace. Migrations that change any other file
+     * are lost.
+     */
+    public static MaterializationPolicy angular() {
+        return ANGULAR;
+    }
+
+    public MaterializationPolicy withProjectExtensions(String... extensions) {
+        if (projectExtensions == null) {
+            return this;
+        }
+        Set<String> withExtensions = new HashSet<>(projectExtensions);
+        withExtensions.addAll(Arrays.asList(extensions));
+        return new MaterializationPolicy(withExtensions, extensions, fileNames);
+    }
+
+    public MaterializationPolicy withFileNames(String... names) {
+        if (projectExtensions == null) {
+            return this;
+        }
+        Set<String> withNames = new HashSet<>(fileNames);
+        withNames.addAll(Arrays.asList(names));
+        return new MaterializationPolicy(projectExtensions, extensions, withNames);
+    }
+
+    Decision decide(Path sourcePath) {
+        if (projectExtensions == null) {
+            return Decision.WRITE;
+        }
+        String fileName = sourcePath.getFileName().toString();
+        if (fileNames.contains(fileName) || (fileName.startsWith("tsconfig") && fileName.endsWith(".json")) ||
+                fileName.startsWith(".eslintrc")) {
+            return Decision.WRITE;
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot > 0 && extensions.contains(fileName.substring(dot + 1))) {
+            return Decision.WRITE;
+        }
+        if (dot > 0 && projectExtensions.contains(fileName.substring(dot + 1))) {
+            return Decision.IF_IN_PROJECT;
+        }
+        return Decision.SKIP;
+    }
+
+    enum Decision {
+        WRITE,
+
+        /**
+         * Write only if the file is under the root of a project in {@code angular.json} or matched by
+         * a {@code tsconfig} include.
+         */
+        IF_IN_PROJECT,
+
+        SKIP
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.Parser;
+import org.openrewrite.SourceFile;
+import org.openrewrite.json.JsonParser;
+import org.openrewrite.tree.ParseError;
+import org.openrewrite.yaml.YamlParser;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Parses the files node modified whose parsers need nothing but the file itself, like JSON and YAML,
+ * so that recipes running after this one in the same cycle see typed trees rather than plain text.
+ */
+final class ModifiedFileParser {
+    private ModifiedFileParser() {
+    }
+
+    static boolean canParse(Path sourcePath) {
+        return parser(sourcePath) != null;
+    }
+
+    /**
+     * @return The file parsed, or {@code null} if there is no parser for it or it doesn't parse.
+     */
+    static @Nullable SourceFile parse(Path sourcePath, String text, Charset charset, ExecutionContext ctx) {
+        Parser parser = parser(sourcePath);
+        if (parser == null) {
+            return null;
+        }
+        List<SourceFile> parsed = parser.parseInputs(singletonList(Parser.Input.fromString(sourcePath, text, charset)), null, ctx)
+                .collect(Collectors.toList());
+        if (parsed.size() != 1 || parsed.get(0) instanceof ParseError) {
+            return null;
+        }
+        return parsed.get(0);
+    }
+
+    /**
+     * @return The parsed file in place of the one node modified, keeping its id, markers and attributes.
+     */
+    static SourceFile replacing(SourceFile before, SourceFile parsed) {
+        SourceFile after = parsed.withId(before.getId());
+        after = after.withMarkers(before.getMarkers());
+        return after.withFileAttributes(before.getFileAttributes());
+    }
+
+    private static @Nullable Parser parser(Path sourcePath) {
+        JsonParser json = JsonParser.builder().build();
+        if (json.accept(sourcePath)) {
+            return json;
+        }
+        YamlParser yaml = YamlParser.builder().build();
+        return yaml.accept(sourcePath) ? yaml : null;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the packages updated, the migrations run and the warnings and errors reported out of the
+ * {@code --verbose} output of {@code ng update}, a line at a time. Each result is passed on as soon as
+ * it is complete. A failed migration or an unhandled exception leaves the workspace half migrated, so
+ * the first one is reported as the failure of the run. Other errors, like those npm prints about a
+ * dependency, are reported without failing a run that exits successfully.
+ */
+final class NgUpdateOutputParser implements NodeOutputListener {
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[;\\d]*[A-Za-z]");
+    private static final Pattern PACKAGE_UPDATE = Pattern.compile(
+            "Updating package\\.json with dependency (\\S+) @ \"([^\"]*)\" \\(was \"([^\"]*)\"\\)");
+    private static final Pattern MIGRATIONS_OF_PACKAGE = Pattern.compile("\\*\\* Executing migrations of package '([^']+)' \\*\\*");
+    private static final Pattern MIGRATION = Pattern.compile("^\u25B8\\s+(.+)$");
+    private static final Pattern MIGRATION_COMPLETED = Pattern.compile("^Migration completed(?: \\((.*)\\))?\\.?$");
+    private static final Pattern MIGRATION_FAILED = Pattern.compile("Migration failed: (.+)$");
+    private static final Pattern WARNING = Pattern.compile("^(?:\u25B2|\u26A0|npm WARN|WARNING:?|Warning:)\\s*(.+)$");
+    private static final Pattern UNHANDLED_EXCEPTION = Pattern.compile("^An unhandled exception occurred:?\\s*(.+)$");
+    private static final Pattern ERROR = Pattern.compile("^(?:\u2716|npm ERR!|Error:)\\s*(.+)$");
+
+    private final boolean live;
+    private final Consumer<Result> results;
+
+    private @Nullable String packageName;
+    private @Nullable String migration;
+    private long migrationStartNanos;
+    private @Nullable String failure;
+
+    /**
+     * @param live Whether lines are passed as they are printed, rather than read back from the output
+     *             once the command has exited, so that how long each migration took is known.
+     */
+    NgUpdateOutputParser(boolean live, Consumer<Result> results) {
+        this.live = live;
+        this.results = results;
+    }
+
+    @Override
+    public void line(String line) {
+        String text = ANSI_ESCAPE.matcher(line).replaceAll("").trim();
+        if (text.isEmpty()) {
+            return;
+        }
+
+        Matcher matcher = PACKAGE_UPDATE.matcher(text);
+        if (matcher.find()) {
+            results.accept(new Result(Kind.PACKAGE, matcher.group(1), matcher.group(3) + " -> " + matcher.group(2), null, null));
+        } else if ((matcher = MIGRATIONS_OF_PACKAGE.matcher(text)).find()) {
+            completeMigration("not completed");
+            packageName = matcher.group(1);
+        } else if ((matcher = MIGRATION.matcher(text)).find()) {
+            completeMigration("not completed");
+            migration = matcher.group(1);
+            migrationStartNanos = System.nanoTime();
+        } else if ((matcher = MIGRATION_COMPLETED.matcher(text)).find()) {
+            completeMigration(matcher.group(1) == null ? "completed" : matcher.group(1));
+        } else if ((matcher = MIGRATION_FAILED.matcher(text)).find()) {
+            if (migration == null) {
+                results.accept(new Result(Kind.ERROR, packageName, matcher.group(1), null, null));
+            } else {
+                completeMigration("failed: " + matcher.group(1));
+            }
+            fail(matcher.group(1));
+        } else if ((matcher = WARNING.matcher(text)).find()) {
+            results.accept(new Result(Kind.WARNING, packageName, matcher.group(1), null, null));
+        } else if ((matcher = UNHANDLED_EXCEPTION.matcher(text)).find()) {
+            results.accept(new Result(Kind.ERROR, packageName, matcher.group(1), null, null));
+            fail(matcher.group(1));
+        } else if ((matcher = ERROR.matcher(text)).find()) {
+            results.accept(new Result(Kind.ERROR, packageName, matcher.group(1), null, null));
+        }
+    }
+
+    @Override
+    public @Nullable String completed() {
+        completeMigration("not completed");
+        return failure;
+    }
+
+    private void completeMigration(String outcome) {
+        if (migration != null) {
+            Long durationMillis = live ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - migrationStartNanos) : null;
+            results.accept(new Result(Kind.MIGRATION, packageName, migration, outcome, durationMillis));
+            migration = null;
+        }
+    }
+
+    private void fail(String message) {
+        if (failure == null) {
+            failure = message;
+        }
+    }
+
+    enum Kind {
+        PACKAGE,
+        MIGRATION,
+        WARNING,
+        ERROR
+    }
+
+    @Value
+    static class Result {
+        Kind kind;
+
+        /**
+         * The package updated, or whose migrations were running.
+         */
+        @Nullable
+        String packageName;
+
+        /**
+         * The versions of an updated package, the description of a migration or the message of a
+         * warning or error.
+         */
+        String description;
+
+        /**
+         * How a migration ended.
+         */
+        @Nullable
+        String outcome;
+
+        @Nullable
+        Long durationMillis;
+    }
+}
@@ -15,9 +15,16 @@
  */
 package org.openrewrite.codemods.migrate.angular;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.*;
 import org.jspecify.annotations.Nullable;
 import org.openrewrite.*;
+import org.openrewrite.codemods.migrate.angular.table.NodePhaseTimings;
+import org.openrewrite.codemods.migrate.angular.table.WorkspaceConflicts;
+import org.openrewrite.config.OptionDescriptor;
 import org.openrewrite.nodejs.NpmExecutor;
 import org.openrewrite.nodejs.NpmExecutorExecutionContextView;
 import org.openrewrite.quark.Quark;
@@ -25,14 +32,24 @@ import org.openrewrite.scheduling.WorkingDirectoryExecutionContextView;
 import org.openrewrite.text.PlainText;
 import org.openrewrite.tree.ParseError;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import static java.util.Collections.emptyList;
 
@@ -40,6 +57,15 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
     private static final String FIRST_RECIPE = NodeBasedRecipe.class.getName() + ".FIRST_RECIPE";
     private static final String PREVIOUS_RECIPE = NodeBasedRecipe.class.getName() + ".PREVIOUS_RECIPE";
     private static final String INIT_REPO_DIR = NodeBasedRecipe.class.getName() + ".INIT_REPO_DIR";
+    private static final String NODE_GYP = "node-gyp@10";
+    private static final String NAN = "nan@2";
+    private static final List<String> NODE_GYP_COMPANIONS = Collections.singletonList(NAN);
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .enable(JsonParser.Feature.ALLOW_COMMENTS)
+            .enable(JsonParser.Feature.ALLOW_TRAILING_COMMA);
+
+    private final transient NodePhaseTimings phaseTimings = new NodePhaseTimings(this);
+    private final transient WorkspaceConflicts workspaceConflicts = new WorkspaceConflicts(this);
 
     @Override
     public Accumulator getInitialValue(ExecutionContext ctx) {
@@ -48,7 +74,33 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
             ctx.putMessage(INIT_REPO_DIR, directory);
             ctx.putMessage(FIRST_RECIPE, ctx.getCycleDetails().getRecipePosition());
         }
-        return new Accumulator(directory);
+        MaterializationPolicy materializationPolicy = NodeBasedRecipeExecutionContextView.view(ctx).getMaterializationPolicy();
+        Accumulator acc = new Accumulator(directory, materializationPolicy == null ? getMaterializationPolicy() : materializationPolicy);
+        if (NodeBasedRecipeExecutionContextView.view(ctx).getCheckpoints()) {
+            // chained recipes each have their own tree to resume
+            Path checkpoints = createDirectory(ctx, "checkpoint");
+            try {
+                acc.checkpoint = Checkpoint.open(Files.createDirectories(
+                        checkpoints.resolve("recipe-" + ctx.getCycleDetails().getRecipePosition())), checkpointRecipe());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        acc.blobs = BlobStore.create(NodeBasedRecipeExecutionContextView.view(ctx));
+        return acc;
+    }
+
+    /**
+     * @return The name and options of this recipe, which a checkpoint only restores the run of.
+     */
+    private String checkpointRecipe() {
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put("name", getName());
+        ObjectNode options = json.putObject("options");
+        for (OptionDescriptor option : getDescriptor().getOptions()) {
+            options.put(option.getName(), option.getValue() == null ? null : String.valueOf(option.getValue()));
+        }
+        return json.toString();
     }
 
     @Override
@@ -58,6 +110,7 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
             public @Nullable Tree visit(@Nullable Tree tree, ExecutionContext ctx) {
                 if (tree instanceof SourceFile && !(tree instanceof Quark) && !(tree instanceof ParseError) &&
                         !tree.getClass().getName().equals("org.openrewrite.java.tree.J$CompilationUnit")) {
+                    long start = System.nanoTime();
                     SourceFile sourceFile = (SourceFile) tree;
                     String fileName = sourceFile.getSourcePath().getFileName().toString();
                     if (fileName.indexOf('.') > 0) {
@@ -65,16 +118,38 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
                         acc.extensionCounts.computeIfAbsent(extension, e -> new AtomicInteger(0)).incrementAndGet();
                     }
 
+                    Charset charset = sourceFile.getCharset();
+                    if (charset != null && !StandardCharsets.UTF_8.equals(charset) &&
+                            ModifiedFileParser.canParse(sourceFile.getSourcePath())) {
+                        acc.charsets.put(sourceFile.getSourcePath().toString(), charset);
+                    }
+
                     // only extract initial source files for first codemod recipe
                     if (Objects.equals(ctx.getMessage(FIRST_RECIPE), ctx.getCycleDetails().getRecipePosition())) {
-                        // FIXME filter out more source types; possibly only write plain text, json, and
-                        // yaml?
-                        acc.writeSource(sourceFile);
+                        acc.materialize(sourceFile);
                     }
 
                     if (sourceFile.getSourcePath().endsWith("angular.json")) {
-                        acc.setAngularJsonPath(sourceFile.getSourcePath());
+                        acc.getAngularJsonPaths().add(sourceFile.getSourcePath());
+                    } else if (fileName.equals("package.json")) {
+                        acc.readPackageJson(sourceFile);
+                        Path dir = Accumulator.parentOf(sourceFile.getSourcePath());
+                        if (acc.angularCoreVersions.containsKey(dir) && mayRun(acc, dir, ctx)) {
+                            acc.toolchainsNeeded = true;
+                        }
+                        if (dir.toString().isEmpty()) {
+                            // source files usually come sorted by path, so a root .npmrc came before it, if any.
+                            // Should one come later, runNode sees that it differs and installs again.
+                            acc.npmrcScanned = true;
+                        }
+                        startToolchainInstalls(acc, ctx);
+                    } else if (sourceFile.getSourcePath().toString().equals(".npmrc")) {
+                        acc.npmrc = sourceFile.printAll();
+                        acc.npmrcScanned = true;
+                        startToolchainInstalls(acc, ctx);
                     }
+                    acc.scannedFiles++;
+                    acc.scanNanos += System.nanoTime() - start;
                 }
 
                 return tree;
@@ -84,102 +159,538 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
 
     @Override
     public Collection<? extends SourceFile> generate(Accumulator acc, ExecutionContext ctx) {
-        Path previous = ctx.getMessage(PREVIOUS_RECIPE);
-        if (previous != null
-                && !Objects.equals(ctx.getMessage(FIRST_RECIPE), ctx.getCycleDetails().getRecipePosition())) {
-            acc.copyFromPrevious(previous);
+        acc.finishMaterialization();
+        recordPhase(acc, ctx, new NodePhaseMetrics(getName(), workspace(acc), NodePhase.SCAN,
+                TimeUnit.NANOSECONDS.toMillis(acc.scanNanos), null, null, null, acc.scannedFiles, null, null));
+        if (acc.materializeStartNanos != 0) {
+            if (acc.checkpoint != null) {
+                if (acc.checkpoint.isResumed()) {
+                    acc.checkpoint.removeStrayFiles(acc);
+                }
+                acc.checkpoint.saveTree(NodePhase.MATERIALIZE, acc);
+            }
+            recordPhase(acc, ctx, new NodePhaseMetrics(getName(), workspace(acc), NodePhase.MATERIALIZE,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acc.materializeStartNanos), null, null,
+                    acc.bytesWritten.get(), (long) acc.files.size(), (long) acc.skippedFiles, acc.skippedBytes));
         }
 
-        runNode(acc, ctx);
-        ctx.putMessage(PREVIOUS_RECIPE, acc.getDirectory());
+        Accumulator previous = ctx.getMessage(PREVIOUS_RECIPE);
+        boolean handOff = previous != null
+                && !Objects.equals(ctx.getMessage(FIRST_RECIPE), ctx.getCycleDetails().getRecipePosition());
+        List<Path> workspaces = new ArrayList<>();
+        for (Path angularJsonPath : acc.getAngularJsonPaths()) {
+            if (shouldRun(acc, angularJsonPath, ctx)) {
+                workspaces.add(angularJsonPath);
+            }
+        }
+        if (workspaces.isEmpty() && !acc.getAngularJsonPaths().isEmpty()) {
+            if (!handOff) {
+                // the materialized sources are still where the next recipe starts from
+                ctx.putMessage(PREVIOUS_RECIPE, acc);
+            }
+            return emptyList();
+        }
+
+        if (handOff) {
+            NodePhaseMeter meter = NodePhaseMeter.start(NodePhase.HAND_OFF);
+            if (NodeBasedRecipeExecutionContextView.view(ctx).getHandOff() == NodeBasedRecipeExecutionContextView.HandOff.MOVE) {
+                acc.moveFromPrevious(previous);
+            } else {
+                acc.copyFromPrevious(previous.getDirectory());
+                if (acc.checkpoint != null) {
+                    if (acc.checkpoint.isResumed()) {
+                        acc.checkpoint.removeStrayFiles(acc);
+                    }
+                    acc.checkpoint.saveTree(NodePhase.HAND_OFF, acc);
+                }
+            }
+            recordPhase(acc, ctx, meter.stop(getName(), workspacePath(acc), null, (long) acc.files.size()));
+        }
+        if (acc.checkpoint != null && acc.checkpoint.isCompleted(acc)) {
+            // a previous attempt ran node on exactly this tree
+            acc.checkpoint.restore(acc);
+            acc.prefetch(ctx);
+            ctx.putMessage(PREVIOUS_RECIPE, acc);
+            return emptyList();
+        }
+        runNode(acc, workspaces, ctx);
+        acc.prefetch(ctx);
+        ctx.putMessage(PREVIOUS_RECIPE, acc);
 
         // FIXME check for generated files
         return emptyList();
     }
 
-    private void runNode(Accumulator acc, ExecutionContext ctx) {
-        Path dir = acc.getDirectory();
-        Path angularJsonPath = acc.getAngularJsonPath();
-        // Check if the file exists
-        if (angularJsonPath == null || !Files.exists(dir.resolve(angularJsonPath))) {
-            throw new RuntimeException("angular.json file not found in the project directory: " + dir);
+    private void runNode(Accumulator acc, List<Path> workspaces, ExecutionContext ctx) {
+        Path repoDir = acc.getDirectory();
+        // Check if the files exist
+        if (workspaces.isEmpty()) {
+            throw new RuntimeException("angular.json file not found in the project directory: " + repoDir);
         }
-
-        Path angularJsonDir = angularJsonPath.getParent();
-        if (angularJsonDir != null) {
-            dir = dir.resolve(angularJsonDir);
+        for (Path angularJsonPath : workspaces) {
+            if (!Files.exists(repoDir.resolve(angularJsonPath))) {
+                throw new RuntimeException("angular.json file not found in the project directory: " + repoDir.resolve(angularJsonPath));
+            }
         }
 
-        Path nodeModules = createDirectory(ctx, "recipe-run-modules");
         boolean useNvmExec = useNvmExec(acc, ctx);
-        List<String> command = getNpmCommand(acc, ctx);
-
-        if (command.isEmpty()) {
+        if (getNpmCommand(acc, ctx).isEmpty()) {
             return;
         }
 
-        NpmExecutor npmShellExecutor = NpmExecutorExecutionContextView.view(ctx).getNpmExecutor().withConfigurationDirectory(dir);
-        npmShellExecutor.init();
+        // the toolchains are shared by all workspaces, and installed with the settings of the shallowest one,
+        // which contains any workspace nested in it
+        Path dir = workspaceDirectory(acc, WorkspaceRuns.groups(workspaces).get(0).get(0));
+        String angularCliVersion = getAngularCliPackage(acc, ctx);
+        String npmrcPath = new File(dir.toString(), ".npmrc").getAbsolutePath();
+
+        // from here on, anything written to the tree is node's doing
+        ChangeJournal changes = ChangeJournal.watch(acc.watchedDirectories());
+        try {
+            Map<String, String> environment = nodeEnvironment();
+            if (acc.blobs != null) {
+                // the tree is linked from the blob store, which node must not write through to
+                environment.put("NODE_OPTIONS", BlobStore.nodeOptions(System.getenv("NODE_OPTIONS")));
+            }
+
+            // Install node-gyp to avoid issues with `npx`, and the angular cli, into toolchains shared by all runs,
+            // unless they were already installed in the background while the source files were scanned
+            NodeMemoryScheduler scheduler = memoryScheduler(ctx);
+            NpmExecutor npmShellExecutor = NpmExecutorExecutionContextView.view(ctx).getNpmExecutor().withConfigurationDirectory(dir);
+            npmShellExecutor.init();
+            Path nodeGyp;
+            Path nodeModules;
+            try {
+                NodeToolchains toolchains = new NodeToolchains(NodeBasedRecipeExecutionContextView.view(ctx).getToolchainDirectory());
+                // installs that ran with another .npmrc may have used another registry
+                ToolchainInstalls background = Objects.equals(acc.toolchainNpmrc, readNpmrc(npmrcPath)) ?
+                        acc.toolchainInstalls : null;
+                nodeGyp = measure(acc, NodePhase.INSTALL_NODE_GYP, null, environment, ctx, () -> {
+                    Path installed = background == null ? null : background.nodeGyp();
+                    return installed != null ? installed : toolchains.provision(NODE_GYP, NODE_GYP_COMPANIONS, prefix -> scheduler.run(
+                            NodeMemoryScheduler.INSTALL_HEAP_MB, environment, env -> npmShellExecutor.exec(
+                                    prefixedInstall(useNvmExec, npmrcPath, prefix, "--ignore-script", NODE_GYP, NAN), dir, env, ctx)));
+                });
+                nodeModules = measure(acc, NodePhase.INSTALL_CLI, null, environment, ctx, () -> {
+                    Path installed = background == null ? null : background.cli();
+                    return installed != null ? installed : toolchains.provision(angularCliVersion, prefix -> scheduler.run(
+                            NodeMemoryScheduler.INSTALL_HEAP_MB, environment, env -> npmShellExecutor.exec(
+                                    prefixedInstall(useNvmExec, npmrcPath, prefix, "--ignore-scripts", angularCliVersion), dir, env, ctx)));
+                });
+            } finally {
+                // Restore npm settings
+                npmShellExecutor.postExec();
+            }
+            environment.put("NODE_PATH", nodeModules.resolve("node_modules") + File.pathSeparator + nodeGyp.resolve("node_modules"));
+
+            List<Path> files = new ArrayList<>();
+            for (int id = 0, count = acc.files.size(); id < count; id++) {
+                files.add(Paths.get(acc.files.path(id)));
+            }
+            WorkspaceRuns runs = new WorkspaceRuns(repoDir, workspaces, files);
+            Map<Path, Path> outputs = runs.run(NodeBasedRecipeExecutionContextView.view(ctx).getWorkspaceConcurrency(),
+                    (angularJsonPath, runEnvironment) -> runWorkspace(acc, angularJsonPath, useNvmExec, nodeModules,
+                            environment, runEnvironment, ctx));
+            for (WorkspaceRuns.Conflict conflict : runs.conflicts()) {
+                StringJoiner joiner = new StringJoiner(",");
+                for (Path workspace : conflict.getWorkspaces()) {
+                    joiner.add(workspace.toString());
+                }
+                workspaceConflicts.insertRow(ctx, new WorkspaceConflicts.Row(conflict.getPath().toString(), joiner.toString()));
+            }
+
+            NodePhaseMeter meter = NodePhaseMeter.start(NodePhase.DETECT_CHANGES);
+            acc.detectChanges(changes == null ? null : changes.changed());
+            if (acc.checkpoint != null) {
+                acc.checkpoint.complete(acc);
+            }
+            recordPhase(acc, ctx, meter.stop(getName(), workspacePath(acc), null, (long) acc.files.modifiedCount()));
+            for (Path out : outputs.values()) {
+                processOutput(out, acc, ctx);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (changes != null) {
+                changes.close();
+            }
+        }
+    }
 
+    /**
+     * Install the dependencies of one workspace and run the codemod in it.
+     *
+     * @return The output of the codemod.
+     */
+    private Path runWorkspace(Accumulator acc, Path angularJsonPath, boolean useNvmExec, Path nodeModules,
+                              Map<String, String> toolchainEnvironment, Map<String, String> runEnvironment,
+                              ExecutionContext ctx) throws IOException {
+        Path dir = workspaceDirectory(acc, angularJsonPath);
+        Map<String, String> environment = new HashMap<>(toolchainEnvironment);
+        environment.putAll(runEnvironment);
+        List<String> command = getNpmCommand(acc, ctx);
+        List<String> localNpmInstallCommand = new ArrayList<>(Arrays.asList("npm", "install", "--force", "--ignore-scripts"));
+        if (useNvmExec) {
+            localNpmInstallCommand.add(0, "nvm-exec");
+            command.add(0, "nvm-exec");
+        }
         command.replaceAll(s -> s
                 .replace("${nodeModules}", nodeModules.toString())
                 .replace("${repoDir}", ".")
                 .replace("${parser}", acc.parser()));
 
-        String angularCliVersion = getAngularCliPackage(acc, ctx);
-        String npmrcPath = new File(dir.toString(), ".npmrc").getAbsolutePath();
-        List<String> installNodeGypAndNan = new ArrayList<>(Arrays.asList("npm", "install", "--userconfig", npmrcPath, "--prefix", nodeModules.toString(), "--force", "--ignore-script", "node-gyp@10", "nan@2"));
-        List<String> prefixedInstallAngularCli = new ArrayList<>(Arrays.asList("npm", "install", "--userconfig", npmrcPath, "--prefix", nodeModules.toString(), "--force", "--ignore-scripts", angularCliVersion));
-        List<String> localNpmInstallCommand = new ArrayList<>(Arrays.asList("npm", "install", "--force", "--ignore-scripts"));
+        // the heap `ng update` needs grows with the sources the TypeScript compiler loads
+        NodeMemoryScheduler scheduler = memoryScheduler(ctx);
+        long heapMb = workspaceHeapMb(acc, angularJsonPath);
 
+        NpmExecutor npmShellExecutor = NpmExecutorExecutionContextView.view(ctx).getNpmExecutor().withConfigurationDirectory(dir);
+        npmShellExecutor.init();
         try {
-            if (useNvmExec) {
-                installNodeGypAndNan.add(0, "nvm-exec");
-                prefixedInstallAngularCli.add(0, "nvm-exec");
-                localNpmInstallCommand.add(0, "nvm-exec");
-                command.add(0, "nvm-exec");
-            }
-
-            Map<String, String> environment = new HashMap<>();
-            environment.put("NG_DISABLE_VERSION_CHECK", "1");
-            environment.put("NG_CLI_ANALYTICS", "false");
-            environment.put("NODE_OPTIONS", "--max-old-space-size=2048");
-            environment.put("NODE_PATH", nodeModules.toString());
-            environment.put("TERM", "dumb");
-
-            // Install node-gyp to avoid issues with `npx`
-            npmShellExecutor.exec(installNodeGypAndNan, dir, environment, ctx);
-            // install angular cli in the project
-            npmShellExecutor.exec(prefixedInstallAngularCli, dir, environment, ctx);
-            // install the project dependencies
-            npmShellExecutor.exec(localNpmInstallCommand, dir, environment, ctx);
-
-            // run `ng update` command
-            Path out = npmShellExecutor.exec(command, dir, environment, ctx);
-
-            for (Map.Entry<Path, Long> entry : acc.beforeModificationTimestamps.entrySet()) {
-                Path path = entry.getKey();
-                if (!Files.exists(path) || Files.getLastModifiedTime(path).toMillis() > entry.getValue()) {
-                    acc.modified(path);
+            // install the project dependencies, unless an identical install is cached
+            NodeModulesCache nodeModulesCache = NodeModulesCache.create(NodeBasedRecipeExecutionContextView.view(ctx));
+            if (nodeModulesCache != null && acc.blobs == null) {
+                // node_modules may be linked from the cache, which node must not write through to
+                environment.put("NODE_OPTIONS", BlobStore.nodeOptions(System.getenv("NODE_OPTIONS")));
+            } else if (environment.containsKey(WorkspaceRuns.WRITE_LOG) && !environment.containsKey("NODE_OPTIONS")) {
+                // the script records which shared files the install writes, too
+                environment.put("NODE_OPTIONS", BlobStore.nodeOptions(System.getenv("NODE_OPTIONS")));
+            }
+            measure(acc, NodePhase.INSTALL_PROJECT, angularJsonPath, environment, ctx, () -> {
+                if (acc.checkpoint != null && acc.checkpoint.isInstalled(angularJsonPath, dir)) {
+                    return null;
                 }
+                String cacheKey = null;
+                if (nodeModulesCache != null && Files.isRegularFile(dir.resolve("package-lock.json"))) {
+                    cacheKey = NodeModulesCache.key(dir, scheduler.run(NodeMemoryScheduler.INSTALL_HEAP_MB, environment,
+                            env -> nodeVersion(npmShellExecutor, useNvmExec, dir, env, ctx)));
+                }
+                if (cacheKey == null || !nodeModulesCache.restore(cacheKey, dir.resolve("node_modules"))) {
+                    scheduler.run(NodeMemoryScheduler.INSTALL_HEAP_MB, environment,
+                            env -> npmShellExecutor.exec(localNpmInstallCommand, dir, env, ctx));
+                    if (cacheKey != null) {
+                        nodeModulesCache.store(cacheKey, dir.resolve("node_modules"));
+                    }
+                }
+                if (acc.checkpoint != null) {
+                    acc.checkpoint.installed(angularJsonPath, dir);
+                }
+                return null;
+            });
+
+            if (acc.checkpoint != null) {
+                acc.checkpoint.running(angularJsonPath);
+            }
+
+            // an attempt that runs out of memory has already changed the tree, so the next one starts over from a
+            // snapshot, whose links node must not write through to unless the blob store or cache preloaded the script
+            if (!environment.containsKey("NODE_OPTIONS")) {
+                environment.put("NODE_OPTIONS", BlobStore.nodeOptions(System.getenv("NODE_OPTIONS")));
+            }
+            try (WorkspaceSnapshot snapshot = WorkspaceSnapshot.take(dir,
+                    Files.createTempDirectory(createDirectory(ctx, "workspace-snapshots"), "workspace"))) {
+                return runCli(acc, angularJsonPath, dir, useNvmExec, nodeModules, command, heapMb, snapshot::restore,
+                        environment, npmShellExecutor, ctx);
             }
-            processOutput(out, acc, ctx);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         } finally {
             // Restore npm settings
             npmShellExecutor.postExec();
         }
     }
 
+    /**
+     * Run `ng update` in a workspace, in a warm worker if the CLI can run in-process.
+     */
+    private Path runCli(Accumulator acc, Path angularJsonPath, Path dir, boolean useNvmExec, Path nodeModules,
+                        List<String> command, long heapMb, NodeMemoryScheduler.Retry retry,
+                        Map<String, String> environment, NpmExecutor npmShellExecutor, ExecutionContext ctx) throws IOException {
+        NodeMemoryScheduler scheduler = memoryScheduler(ctx);
+        NodeBasedRecipeExecutionContextView view = NodeBasedRecipeExecutionContextView.view(ctx);
+        List<String> cliArguments = getCliArguments(acc, ctx);
+        if (view.getNodeWorkers() && !useNvmExec && cliArguments != null) {
+            Path cli = nodeModules.resolve("node_modules").resolve("@angular").resolve("cli");
+            return measure(acc, NodePhase.RUN, angularJsonPath, environment, ctx, () -> scheduler.run(heapMb, environment, retry,
+                    env -> listen(angularJsonPath, true, ctx, lines -> NodeWorker.run(cli, dir, cliArguments, env, scheduler,
+                            view.getNodeWorkerMaxJobs(), view.getNodeWorkerMaxRssBytes(), lines))));
+        }
+        return measure(acc, NodePhase.RUN, angularJsonPath, environment, ctx, () -> scheduler.run(heapMb, environment, retry,
+                env -> listen(angularJsonPath, false, ctx, lines -> {
+                    Path out = npmShellExecutor.exec(command, dir, env, ctx);
+                    if (lines != null) {
+                        // the executor only hands over the output once node has exited
+                        try (BufferedReader reader = Files.newBufferedReader(out, StandardCharsets.UTF_8)) {
+                            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                                lines.accept(line);
+                            }
+                        }
+                    }
+                    return out;
+                })));
+    }
+
+    /**
+     * Run a command with the recipe's {@link #outputListener} listening to its output, and fail if the
+     * output reports a failure, even if the command exited successfully.
+     */
+    private Path listen(Path angularJsonPath, boolean live, ExecutionContext ctx, ListenedCommand command) throws IOException {
+        NodeOutputListener listener = outputListener(angularJsonPath, live, ctx);
+        Path out;
+        try {
+            out = command.run(listener == null ? null : listener::line);
+        } catch (IOException | RuntimeException e) {
+            String failure = listener == null ? null : listener.completed();
+            if (failure != null) {
+                throw new IllegalStateException("Failed to update " + angularJsonPath + ": " + failure, e);
+            }
+            throw e;
+        }
+        String failure = listener == null ? null : listener.completed();
+        if (failure != null) {
+            throw new IllegalStateException("Failed to update " + angularJsonPath + ": " + failure);
+        }
+        return out;
+    }
+
+    @FunctionalInterface
+    private interface ListenedCommand {
+        Path run(@Nullable Consumer<String> lines) throws IOException;
+    }
+
+    private static NodeMemoryScheduler memoryScheduler(ExecutionContext ctx) {
+        return NodeMemoryScheduler.forBudget(NodeBasedRecipeExecutionContextView.view(ctx).getNodeMemoryBudgetBytes());
+    }
+
+    /**
+     * @return The heap for running the codemod in a workspace, from the number and size of the files
+     * scanned in it.
+     */
+    private static long workspaceHeapMb(Accumulator acc, Path angularJsonPath) {
+        Path workspace = angularJsonPath.getParent();
+        String prefix = workspace == null ? "" : workspace.toString() + File.separatorChar;
+        long files = 0;
+        long bytes = 0;
+        for (int id = 0, count = acc.files.size(); id < count; id++) {
+            if (acc.files.path(id).startsWith(prefix)) {
+                files++;
+                bytes += Math.max(0, acc.files.size(id));
+            }
+        }
+        return NodeMemoryScheduler.heapMb(files, bytes);
+    }
+
+    private static Path workspaceDirectory(Accumulator acc, Path angularJsonPath) {
+        Path angularJsonDir = angularJsonPath.getParent();
+        return angularJsonDir == null ? acc.getDirectory() : acc.getDirectory().resolve(angularJsonDir);
+    }
+
+    /**
+     * Time a phase that runs node, and stop it if it runs past its timeout or its processes stop making
+     * progress.
+     *
+     * @param environment The environment the phase runs node with, to which the process monitor adds a tag.
+     */
+    private <T> T measure(Accumulator acc, NodePhase phase, @Nullable Path workspace, Map<String, String> environment,
+                          ExecutionContext ctx, NodeCommand<T> command) throws IOException {
+        NodeBasedRecipeExecutionContextView view = NodeBasedRecipeExecutionContextView.view(ctx);
+        Duration timeout = view.getPhaseTimeout(phase);
+        Duration idleTimeout = view.getIdleTimeout();
+        long start = System.nanoTime();
+        // the phase's processes are only looked for in /proc if they are measured, or may have to be stopped
+        try (ProcessTreeMonitor processes = view.getProcessMetrics() || timeout != null || idleTimeout != null ?
+                ProcessTreeMonitor.start(environment) : null;
+             NodePhaseMeter meter = NodePhaseMeter.startProcesses(phase, view.getProcessMetrics() ? processes : null);
+             NodeWatchdog watchdog = NodeWatchdog.start(timeout, idleTimeout, processes)) {
+            T result;
+            try {
+                result = command.run();
+            } catch (IOException | RuntimeException e) {
+                if (watchdog.getExpiry() != null) {
+                    throw timedOut(acc, phase, workspace, watchdog.getExpiry(), start, e);
+                }
+                throw e;
+            }
+            if (watchdog.getExpiry() != null) {
+                throw timedOut(acc, phase, workspace, watchdog.getExpiry(), start, null);
+            }
+            recordPhase(acc, ctx, meter.stop(getName(), workspace, null, null));
+            return result;
+        }
+    }
+
+    private NodePhaseTimeoutException timedOut(Accumulator acc, NodePhase phase, @Nullable Path workspace,
+                                               NodeWatchdog.Expiry expiry, long startNanos, @Nullable Throwable cause) {
+        List<NodePhase> completedPhases;
+        synchronized (acc.completedPhases) {
+            completedPhases = new ArrayList<>(acc.completedPhases);
+        }
+        return new NodePhaseTimeoutException(getName(), phase, workspace, expiry == NodeWatchdog.Expiry.IDLE,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), completedPhases, cause);
+    }
+
+    /**
+     * Called from the threads of concurrently updated workspaces too.
+     */
+    private synchronized void recordPhase(Accumulator acc, ExecutionContext ctx, NodePhaseMetrics metrics) {
+        acc.completedPhases.add(metrics.getPhase());
+        phaseTimings.insertRow(ctx, new NodePhaseTimings.Row(metrics.getRecipe(), metrics.getWorkspace(),
+                metrics.getPhase().name(), metrics.getDurationMillis(), metrics.getChildCpuMillis(),
+                metrics.getChildPeakRssBytes(), metrics.getBytesWritten(), metrics.getFiles(), metrics.getSkippedFiles(),
+                metrics.getSkippedBytes()));
+        NodeMetricsListener listener = NodeBasedRecipeExecutionContextView.view(ctx).getMetricsListener();
+        if (listener != null) {
+            listener.phaseCompleted(metrics);
+        }
+    }
+
+    /**
+     * @return The workspace of a phase that covers the whole repository, if there is just one.
+     */
+    private static @Nullable Path workspacePath(Accumulator acc) {
+        return acc.getAngularJsonPaths().size() == 1 ? acc.getAngularJsonPaths().iterator().next() : null;
+    }
+
+    private static @Nullable String workspace(Accumulator acc) {
+        Path workspace = workspacePath(acc);
+        return workspace == null ? null : workspace.toString();
+    }
+
+    @FunctionalInterface
+    private interface NodeCommand<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Start installing the toolchains in the background while the source files are still being scanned,
+     * once a workspace that this recipe may run in and the project's {@code .npmrc} have been seen. The
+     * installs use that {@code .npmrc}, or no configuration if the project has none, like
+     * {@link #runNode} does. If they fail, or the {@code .npmrc} runNode finds differs from the one they
+     * used, runNode installs the toolchains again.
+     */
+    private void startToolchainInstalls(Accumulator acc, ExecutionContext ctx) {
+        if (acc.toolchainInstallsStarted || !acc.toolchainsNeeded || !acc.npmrcScanned) {
+            return;
+        }
+        acc.toolchainInstallsStarted = true;
+        try {
+            if (useNvmExec(acc, ctx)) {
+                // nvm-exec picks the node version from the project's .nvmrc, which isn't written yet
+                return;
+            }
+            String cliPackage = getAngularCliPackage(acc, ctx);
+            Path dir = createDirectory(ctx, "toolchain-installs");
+            Path npmrc = dir.resolve(".npmrc");
+            if (acc.npmrc != null) {
+                Files.write(npmrc, acc.npmrc.getBytes(StandardCharsets.UTF_8));
+            } else {
+                Files.deleteIfExists(npmrc);
+            }
+            String npmrcPath = npmrc.toAbsolutePath().toString();
+            NpmExecutor executor = NpmExecutorExecutionContextView.view(ctx).getNpmExecutor().withConfigurationDirectory(dir);
+            executor.init();
+            Map<String, String> environment = nodeEnvironment();
+            NodeMemoryScheduler scheduler = memoryScheduler(ctx);
+            acc.toolchainNpmrc = acc.npmrc;
+            acc.toolchainInstalls = ToolchainInstalls.start(
+                    new NodeToolchains(NodeBasedRecipeExecutionContextView.view(ctx).getToolchainDirectory()),
+                    NODE_GYP, NODE_GYP_COMPANIONS, prefix -> scheduler.run(NodeMemoryScheduler.INSTALL_HEAP_MB, environment, env -> executor.exec(
+                            prefixedInstall(false, npmrcPath, prefix, "--ignore-script", NODE_GYP, NAN), dir, env, ctx)),
+                    cliPackage, prefix -> scheduler.run(NodeMemoryScheduler.INSTALL_HEAP_MB, environment, env -> executor.exec(
+                            prefixedInstall(false, npmrcPath, prefix, "--ignore-scripts", cliPackage), dir, env, ctx)),
+                    executor::postExec);
+        } catch (IOException | RuntimeException e) {
+            // runNode installs the toolchains itself, and reports whatever went wrong
+        }
+    }
+
+    private static @Nullable String readNpmrc(String npmrcPath) throws IOException {
+        Path npmrc = Paths.get(npmrcPath);
+        return Files.exists(npmrc) ? new String(Files.readAllBytes(npmrc), StandardCharsets.UTF_8) : null;
+    }
+
+    private static Map<String, String> nodeEnvironment() {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("NG_DISABLE_VERSION_CHECK", "1");
+        environment.put("NG_CLI_ANALYTICS", "false");
+        environment.put("TERM", "dumb");
+        return environment;
+    }
+
+    private static List<String> prefixedInstall(boolean useNvmExec, @Nullable String npmrcPath, Path prefix, String... packages) {
+        List<String> command = new ArrayList<>(Arrays.asList("npm", "install", "--prefix", prefix.toString(), "--force"));
+        if (npmrcPath != null) {
+            command.add(2, "--userconfig");
+            command.add(3, npmrcPath);
+        }
+        command.addAll(Arrays.asList(packages));
+        if (useNvmExec) {
+            command.add(0, "nvm-exec");
+        }
+        return command;
+    }
+
+    private static String nodeVersion(NpmExecutor npmShellExecutor, boolean useNvmExec, Path dir,
+                                      Map<String, String> environment, ExecutionContext ctx) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList("node", "--version"));
+        if (useNvmExec) {
+            command.add(0, "nvm-exec");
+        }
+        Path out = npmShellExecutor.exec(command, dir, environment, ctx);
+        return new String(Files.readAllBytes(out), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * @return Which source files to write to the working tree before running node.
+     */
+    protected MaterializationPolicy getMaterializationPolicy() {
+        return MaterializationPolicy.all();
+    }
+
+    /**
+     * @param angularJsonPath The {@code angular.json} of one of the workspaces in the repository.
+     * @return {@code false} if the workspace is already in the state this recipe would bring it to, in
+     * which case it is left alone. If every workspace is, none of the node pipeline is run.
+     */
+    protected boolean shouldRun(Accumulator acc, Path angularJsonPath, ExecutionContext ctx) {
+        return true;
+    }
+
+    /**
+     * Like {@link #shouldRun}, but asked while the source files are still being scanned, to decide whether
+     * to install the toolchains ahead of time, and without any side effects.
+     *
+     * @param workspaceDirectory The directory of a {@code package.json} that declares {@code @angular/core}.
+     * @return {@code false} if this recipe would leave a workspace there alone.
+     */
+    protected boolean mayRun(Accumulator acc, Path workspaceDirectory, ExecutionContext ctx) {
+        return true;
+    }
+
     protected abstract List<String> getNpmCommand(Accumulator acc, ExecutionContext ctx);
 
+    /**
+     * @return The arguments of the Angular CLI, if {@link #getNpmCommand} does nothing but run it, so
+     * that it can be run in a long-lived node worker instead. {@code null} otherwise.
+     */
+    protected @Nullable List<String> getCliArguments(Accumulator acc, ExecutionContext ctx) {
+        return null;
+    }
+
     // abstract method to return a boolean value for whether to use nvm-exec ahead
     // of commands
     protected abstract boolean useNvmExec(Accumulator acc, ExecutionContext ctx);
 
     protected abstract String getAngularCliPackage(Accumulator acc, ExecutionContext ctx);
 
+    /**
+     * @param angularJsonPath The workspace the command runs in.
+     * @param live            Whether the listener gets each line as it is printed, rather than once the
+     *                        command has exited.
+     * @return A listener for the output of the command in one workspace, called from the thread
+     * running that workspace, or {@code null} to not listen.
+     */
+    protected @Nullable NodeOutputListener outputListener(Path angularJsonPath, boolean live, ExecutionContext ctx) {
+        return null;
+    }
+
     protected void processOutput(Path out, Accumulator acc, ExecutionContext ctx) {
     }
 
@@ -190,8 +701,18 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
             public @Nullable Tree visit(@Nullable Tree tree, ExecutionContext ctx) {
                 if (tree instanceof SourceFile) {
                     SourceFile sourceFile = (SourceFile) tree;
-                    // TODO parse sources like JSON where parser doesn't require an environment
-                    return createAfter(sourceFile, acc, ctx);
+                    long start = System.nanoTime();
+                    SourceFile after = createAfter(sourceFile, acc, ctx);
+                    if (after != sourceFile) {
+                        acc.createAfterNanos += System.nanoTime() - start;
+                        // there is no end to the visitor, but every modified file passes through it once
+                        if (++acc.createdAfter == acc.files.modifiedCount()) {
+                            recordPhase(acc, ctx, new NodePhaseMetrics(getName(), workspace(acc), NodePhase.CREATE_AFTER,
+                                    TimeUnit.NANOSECONDS.toMillis(acc.createAfterNanos), null, null, null, (long) acc.createdAfter,
+                                    null, null));
+                        }
+                    }
+                    return after;
                 }
                 return tree;
             }
@@ -202,6 +723,12 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
         if (!acc.wasModified(before)) {
             return before;
         }
+        if (NodeBasedRecipeExecutionContextView.view(ctx).getParseModifiedFiles()) {
+            SourceFile parsed = acc.parsed(before, ctx);
+            if (parsed != null) {
+                return parsed;
+            }
+        }
         return new PlainText(
                 before.getId(),
                 before.getSourcePath(),
@@ -221,15 +748,219 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
         @Getter
         final Path directory;
 
-        final Map<Path, Long> beforeModificationTimestamps = new HashMap<>();
-        final Set<Path> modified = new LinkedHashSet<>();
+        final MaterializationPolicy materializationPolicy;
+
+        /**
+         * Every file in the working tree, with its modification time, size and CRC32 before node ran.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        FileIndex files = new FileIndex();
+
         final Map<String, AtomicInteger> extensionCounts = new HashMap<>();
         final Map<String, Object> data = new HashMap<>();
 
+        /**
+         * The {@code @angular/core} version declared by each {@code package.json}, by the directory
+         * containing it.
+         */
+        final Map<Path, String> angularCoreVersions = new HashMap<>();
+
+        /**
+         * Directories and files that belong to a project of the workspace, relative to the repository root.
+         */
+        final Set<Path> projectRoots = new HashSet<>();
+
+        /**
+         * Source files that {@link MaterializationPolicy} writes only if they belong to a project, seen
+         * before the {@code angular.json} or {@code tsconfig} that would tell.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        final List<SourceFile> deferred = new ArrayList<>();
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        SourceMaterializer materializer;
+
         @Getter
-        @Setter
+        int skippedFiles;
+
+        /**
+         * The size on disk of the source files that were not written, where known.
+         */
+        @Getter
+        long skippedBytes;
+
+        /**
+         * The {@code angular.json} of every workspace in the repository.
+         */
+        @Getter
+        final Set<Path> angularJsonPaths = new TreeSet<>();
+
+        /**
+         * Where the files this recipe modified were saved before its tree was moved on to the next recipe.
+         */
         @Nullable
-        Path angularJsonPath;
+        Path journal;
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        ToolchainInstalls toolchainInstalls;
+
+        /**
+         * The contents of the project's {@code .npmrc}, if it has one and it has been scanned.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        String npmrc;
+
+        /**
+         * Whether the project's {@code .npmrc} would have been scanned by now, if it had one.
+         */
+        boolean npmrcScanned;
+
+        /**
+         * Whether a workspace this recipe may run in has been scanned.
+         */
+        boolean toolchainsNeeded;
+
+        boolean toolchainInstallsStarted;
+
+        /**
+         * The {@code .npmrc} the background toolchain installs ran with.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        String toolchainNpmrc;
+
+        /**
+         * Where the source files are linked from rather than written, if a blob store is configured.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        BlobStore blobs;
+
+        /**
+         * What a previous attempt of this run got done, if checkpoints are enabled.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        Checkpoint checkpoint;
+
+        /**
+         * Reads the files node modified ahead of {@link #content(SourceFile)}.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        @Nullable
+        ContentPrefetcher prefetcher;
+
+        /**
+         * The contents of files that {@link #parsed(SourceFile, ExecutionContext)} failed to parse, until
+         * {@link #content(SourceFile)} takes them.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        final Map<String, String> unparsed = new ConcurrentHashMap<>();
+
+        /**
+         * The charsets of the source files that {@link ModifiedFileParser} can parse, where they aren't UTF-8,
+         * so that the prefetcher parses them as {@link #parsed(SourceFile, ExecutionContext)} would.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        final Map<String, Charset> charsets = new ConcurrentHashMap<>();
+
+        /**
+         * What the phases that run inside this JVM cost, for {@link NodePhaseMetrics}.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        long scannedFiles;
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        long scanNanos;
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        long materializeStartNanos;
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        final AtomicLong bytesWritten = new AtomicLong();
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        long createAfterNanos;
+
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        int createdAfter;
+
+        /**
+         * The phases completed so far, for a {@link NodePhaseTimeoutException} to tell how far the run got.
+         */
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        final List<NodePhase> completedPhases = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Take over the previous recipe's tree by moving it, so that the cost of the hand-off grows with
+         * the number of files the previous recipe changed rather than with the size of the tree.
+         */
+        public void moveFromPrevious(Accumulator previous) {
+            try {
+                previous.writeJournal();
+                try {
+                    Files.delete(directory);
+                    Files.move(previous.directory, directory, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    Files.createDirectories(directory);
+                    copyFromPrevious(previous.directory);
+                    return;
+                }
+
+                // only the files the previous recipe modified look any different from its own starting point
+                files = previous.files.copy();
+                BitSet modified = files.modified();
+                for (int id = modified.nextSetBit(0); id >= 0; id = modified.nextSetBit(id + 1)) {
+                    Path target = files.resolve(directory, id);
+                    if (Files.exists(target)) {
+                        byte[] bytes = Files.readAllBytes(target);
+                        files.put(files.path(id), Files.getLastModifiedTime(target).toMillis(), bytes.length, hash(bytes));
+                    } else {
+                        files.put(files.path(id), FileIndex.UNKNOWN, FileIndex.UNKNOWN, FileIndex.UNKNOWN);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeJournal() throws IOException {
+            if (prefetcher != null) {
+                prefetcher.stop();
+            }
+            Path journal = directory.resolveSibling(directory.getFileName() + "-journal");
+            BitSet modified = files.modified();
+            for (int id = modified.nextSetBit(0); id >= 0; id = modified.nextSetBit(id + 1)) {
+                Path path = files.resolve(directory, id);
+                if (Files.exists(path)) {
+                    Path target = journal.resolve(files.path(id));
+                    Files.createDirectories(target.getParent());
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            this.journal = journal;
+        }
 
         public void copyFromPrevious(Path previous) {
             try {
@@ -238,7 +969,8 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
                     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
                         Path target = directory.resolve(previous.relativize(dir));
                         if (!target.equals(directory)) {
-                            Files.createDirectory(target);
+                            // a retry finds the directories of the previous attempt
+                            Files.createDirectories(target);
                         }
                         return FileVisitResult.CONTINUE;
                     }
@@ -247,8 +979,16 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
                     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                         try {
                             Path target = directory.resolve(previous.relativize(file));
-                            Files.copy(file, target);
-                            beforeModificationTimestamps.put(target, Files.getLastModifiedTime(target).toMillis());
+                            String path = directory.relativize(target).toString();
+                            if (checkpoint != null) {
+                                Checkpoint.Entry copied = checkpoint.reusableCopy(path, attrs.lastModifiedTime().toMillis(), target);
+                                if (copied != null) {
+                                    files.put(path, copied.getTimestamp(), copied.getSize(), copied.getHash());
+                                    return FileVisitResult.CONTINUE;
+                                }
+                            }
+                            long crc = copy(file, target);
+                            files.put(path, Files.getLastModifiedTime(target).toMillis(), attrs.size(), crc);
                         } catch (NoSuchFileException ignore) {
                         }
                         return FileVisitResult.CONTINUE;
@@ -269,31 +1009,346 @@ public abstract class NodeBasedRecipe extends ScanningRecipe<NodeBasedRecipe.Acc
             }
         }
 
+        public void materialize(SourceFile sourceFile) {
+            if (materializeStartNanos == 0) {
+                materializeStartNanos = System.nanoTime();
+            }
+            Path sourcePath = sourceFile.getSourcePath();
+            String fileName = sourcePath.getFileName().toString();
+            if (fileName.equals("angular.json")) {
+                readAngularJson(sourceFile);
+            } else if (fileName.startsWith("tsconfig") && fileName.endsWith(".json")) {
+                readTsconfig(sourceFile);
+            }
+
+            switch (materializationPolicy.decide(sourcePath)) {
+                case WRITE:
+                    writeSource(sourceFile);
+                    break;
+                case IF_IN_PROJECT:
+                    if (isInProject(sourcePath)) {
+                        writeSource(sourceFile);
+                    } else {
+                        deferred.add(sourceFile);
+                    }
+                    break;
+                default:
+                    skip(sourceFile);
+            }
+        }
+
+        /**
+         * Decide on the source files whose project membership wasn't known yet when they were scanned,
+         * and wait until every source file is written.
+         */
+        public void finishMaterialization() {
+            for (SourceFile sourceFile : deferred) {
+                if (projectRoots.isEmpty() || isInProject(sourceFile.getSourcePath())) {
+                    writeSource(sourceFile);
+                } else {
+                    skip(sourceFile);
+                }
+            }
+            deferred.clear();
+
+            if (materializer != null) {
+                materializer.await();
+                materializer = null;
+            }
+        }
+
+        private void skip(SourceFile sourceFile) {
+            skippedFiles++;
+            if (sourceFile.getFileAttributes() != null) {
+                skippedBytes += sourceFile.getFileAttributes().getSize();
+            }
+        }
+
+        private boolean isInProject(Path sourcePath) {
+            for (Path root : projectRoots) {
+                if (root.toString().isEmpty() || sourcePath.startsWith(root)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void readAngularJson(SourceFile angularJson) {
+            Path workspace = parentOf(angularJson.getSourcePath());
+            try {
+                for (JsonNode project : MAPPER.readTree(angularJson.printAll()).path("projects")) {
+                    for (String root : Arrays.asList("root", "sourceRoot")) {
+                        if (project.path(root).isTextual()) {
+                            projectRoots.add(workspace.resolve(project.path(root).asText()).normalize());
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // not valid JSON, so the Angular CLI won't make sense of it either
+            }
+        }
+
+        private void readTsconfig(SourceFile tsconfig) {
+            Path dir = parentOf(tsconfig.getSourcePath());
+            try {
+                JsonNode config = MAPPER.readTree(tsconfig.printAll());
+                for (String patterns : Arrays.asList("include", "files")) {
+                    for (JsonNode pattern : config.path(patterns)) {
+                        // the directory part of the pattern, up to its first wildcard
+                        Path root = dir;
+                        for (String segment : pattern.asText().split("/")) {
+                            if (segment.contains("*") || segment.contains("?")) {
+                                break;
+                            }
+                            root = root.resolve(segment);
+                        }
+                        projectRoots.add(root.normalize());
+                    }
+                }
+            } catch (IOException ignored) {
+                // not valid JSON, so the TypeScript compiler won't make sense of it either
+            }
+        }
+
+        static Path parentOf(Path sourcePath) {
+            Path parent = sourcePath.getParent();
+            return parent == null ? Paths.get("") : parent;
+        }
+
+        /**
+         * Write the source file to the working tree in the background. Call {@link #finishMaterialization()}
+         * before reading the tree.
+         */
         public void writeSource(SourceFile tree) {
+            if (materializer == null) {
+                materializer = new SourceMaterializer(this::write);
+            }
+            materializer.submit(tree);
+        }
+
+        private void write(SourceFile tree) throws IOException {
+            SourceMaterializer materializer = Objects.requireNonNull(this.materializer);
+            Path path = resolvedPath(tree);
+            byte[] printed = null;
+            if (checkpoint != null) {
+                printed = print(tree);
+                Checkpoint.Entry written = checkpoint.reusableSource(tree.getSourcePath().toString(), printed, path);
+                if (written != null) {
+                    files.put(tree.getSourcePath().toString(), written.getTimestamp(), written.getSize(), written.getHash());
+                    return;
+                }
+            }
+            materializer.createParentDirectories(path);
+            byte[] bytes = printed != null ? printed : print(tree);
+            if (blobs != null && blobs.link(bytes, path)) {
+                files.put(tree.getSourcePath().toString(), Files.getLastModifiedTime(path).toMillis(),
+                        bytes.length, hash(bytes));
+                return;
+            }
+            Path written = Files.write(path, bytes);
+            files.put(tree.getSourcePath().toString(), Files.getLastModifiedTime(written).toMillis(),
+                    bytes.length, hash(bytes));
+            bytesWritten.addAndGet(bytes.length);
+        }
+
+        private static byte[] print(SourceFile tree) {
+            PrintOutputCapture.MarkerPrinter markerPrinter = new PrintOutputCapture.MarkerPrinter() {
+            };
+            return tree.printAll(new PrintOutputCapture<>(0, markerPrinter))
+                    .getBytes(tree.getCharset() != null ? tree.getCharset() : StandardCharsets.UTF_8);
+        }
+
+        void readPackageJson(SourceFile packageJson) {
             try {
-                Path path = resolvedPath(tree);
-                Files.createDirectories(path.getParent());
-                PrintOutputCapture.MarkerPrinter markerPrinter = new PrintOutputCapture.MarkerPrinter() {
-                };
-                Path written = Files.write(path, tree.printAll(new PrintOutputCapture<>(0, markerPrinter))
-                        .getBytes(tree.getCharset() != null ? tree.getCharset() : StandardCharsets.UTF_8));
-                beforeModificationTimestamps.put(written, Files.getLastModifiedTime(written).toMillis());
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+                JsonNode manifest = MAPPER.readTree(packageJson.printAll());
+                for (String dependencies : Arrays.asList("dependencies", "devDependencies")) {
+                    JsonNode version = manifest.path(dependencies).path("@angular/core");
+                    if (version.isTextual()) {
+                        angularCoreVersions.put(parentOf(packageJson.getSourcePath()), version.asText());
+                        return;
+                    }
+                }
+            } catch (IOException ignored) {
+                // not valid JSON, so npm won't make sense of it either
+            }
+        }
+
+        /**
+         * @return The {@code @angular/core} version declared by the {@code package.json} closest to
+         * {@code dir}, if any.
+         */
+        public @Nullable String getAngularCoreVersion(@Nullable Path dir) {
+            for (Path d = dir; d != null; d = d.getParent()) {
+                String version = angularCoreVersions.get(d);
+                if (version != null) {
+                    return version;
+                }
+            }
+            return angularCoreVersions.get(Paths.get(""));
+        }
+
+        /**
+         * Copy a file, hashing its contents on the way.
+         *
+         * @return The CRC32 of the contents.
+         */
+        private static long copy(Path source, Path target) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(source);
+                 OutputStream out = Files.newOutputStream(target)) {
+                for (int n; (n = in.read(buffer)) >= 0; ) {
+                    crc.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
             }
+            return crc.getValue();
+        }
+
+        /**
+         * Mark the files that node changed as modified.
+         *
+         * @param candidates The only files that may have changed, or {@code null} if any file may have.
+         */
+        void detectChanges(@Nullable Set<Path> candidates) throws IOException {
+            if (candidates != null) {
+                for (Path path : candidates) {
+                    int id = files.id(directory.relativize(path).toString());
+                    if (id >= 0 && isChanged(id)) {
+                        files.markModified(id);
+                    }
+                }
+                return;
+            }
+
+            for (int id = 0, count = files.size(); id < count; id++) {
+                Path path = files.resolve(directory, id);
+                if (!Files.exists(path)) {
+                    if (files.timestamp(id) != FileIndex.UNKNOWN) {
+                        files.markModified(id);
+                    }
+                    continue;
+                }
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                long size = files.size(id);
+                if ((attrs.lastModifiedTime().toMillis() != files.timestamp(id) || size != FileIndex.UNKNOWN && attrs.size() != size) &&
+                        isChanged(id)) {
+                    files.markModified(id);
+                }
+            }
+        }
+
+        private boolean isChanged(int id) throws IOException {
+            Path path = files.resolve(directory, id);
+            long before = files.timestamp(id);
+            if (!Files.exists(path)) {
+                return before != FileIndex.UNKNOWN;
+            } else if (before == FileIndex.UNKNOWN) {
+                return true;
+            }
+            long size = files.size(id);
+            if (size != FileIndex.UNKNOWN && Files.size(path) != size) {
+                return true;
+            }
+            long hash = files.hash(id);
+            if (hash != FileIndex.UNKNOWN) {
+                return hash != hash(Files.readAllBytes(path));
+            }
+            return Files.getLastModifiedTime(path).toMillis() > before;
+        }
+
+        /**
+         * @return The directories of the working tree containing files, for {@link ChangeJournal} to watch.
+         */
+        List<Path> watchedDirectories() {
+            List<Path> dirs = new ArrayList<>();
+            for (String dir : files.directories()) {
+                dirs.add(directory.resolve(dir));
+            }
+            return dirs;
+        }
+
+        private static long hash(byte[] bytes) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            return crc.getValue();
         }
 
         public void modified(Path path) {
-            modified.add(path);
+            int id = files.id(directory.relativize(path).toString());
+            if (id >= 0) {
+                files.markModified(id);
+            }
         }
 
         public boolean wasModified(SourceFile tree) {
-            return modified.contains(resolvedPath(tree));
+            int id = files.id(tree.getSourcePath().toString());
+            return id >= 0 && files.isModified(id);
+        }
+
+        public Set<Path> getModified() {
+            Set<Path> paths = new LinkedHashSet<>();
+            BitSet modified = files.modified();
+            for (int id = modified.nextSetBit(0); id >= 0; id = modified.nextSetBit(id + 1)) {
+                paths.add(files.resolve(directory, id));
+            }
+            return paths;
+        }
+
+        /**
+         * Start reading the files node modified in the background, in the order the edit phase asks for them.
+         */
+        void prefetch(ExecutionContext ctx) {
+            long maxBytes = NodeBasedRecipeExecutionContextView.view(ctx).getPrefetchMaxBytes();
+            if (maxBytes > 0 && files.modifiedCount() > 0) {
+                NodeBasedRecipeExecutionContextView view = NodeBasedRecipeExecutionContextView.view(ctx);
+                prefetcher = ContentPrefetcher.start(directory, files, maxBytes, charsets,
+                        view.getParseModifiedFiles() ? ctx : null);
+            }
+        }
+
+        /**
+         * @return The modified file parsed by the parser for its type, or {@code null} if there is none or
+         * the file doesn't parse, in which case {@link #content(SourceFile)} still has its contents.
+         */
+        public @Nullable SourceFile parsed(SourceFile tree, ExecutionContext ctx) {
+            if (!ModifiedFileParser.canParse(tree.getSourcePath())) {
+                return null;
+            }
+            Charset charset = tree.getCharset() != null ? tree.getCharset() : StandardCharsets.UTF_8;
+            String path = tree.getSourcePath().toString();
+            ContentPrefetcher.Prefetched prefetched = prefetcher == null ? null : prefetcher.take(path);
+            SourceFile parsed;
+            if (prefetched != null && charset.equals(charsets.getOrDefault(path, StandardCharsets.UTF_8))) {
+                // parsed ahead, unless it doesn't parse
+                parsed = prefetched.getParsed();
+                if (parsed == null) {
+                    unparsed.put(path, charset.decode(prefetched.getContents()).toString());
+                }
+            } else {
+                String text = prefetched != null ? charset.decode(prefetched.getContents()).toString() : content(tree);
+                parsed = ModifiedFileParser.parse(tree.getSourcePath(), text, charset, ctx);
+                if (parsed == null) {
+                    unparsed.put(path, text);
+                }
+            }
+            if (parsed == null) {
+                return null;
+            }
+            return ModifiedFileParser.replacing(tree, parsed);
         }
 
         public String content(SourceFile tree) {
+            String text = unparsed.remove(tree.getSourcePath().toString());
+            if (text != null) {
+                return text;
+            }
+            ContentPrefetcher.Prefetched prefetched = prefetcher == null ? null : prefetcher.take(tree.getSourcePath().toString());
+            if (prefetched != null) {
+                return (tree.getCharset() != null ? tree.getCharset() : Charset.defaultCharset()).decode(prefetched.getContents()).toString();
+            }
             try {
-                Path path = resolvedPath(tree);
+                Path path = journal == null ? resolvedPath(tree) : journal.resolve(tree.getSourcePath());
                 return tree.getCharset() != null ? new String(Files.readAllBytes(path), tree.getCharset())
                         : new String(Files.readAllBytes(path));
             } catch (IOException e) {
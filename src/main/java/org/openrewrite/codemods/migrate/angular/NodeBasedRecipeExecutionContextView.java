@@ -0,0 +1,319 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.DelegatingExecutionContext;
+import org.openrewrite.ExecutionContext;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Settings for {@link NodeBasedRecipe} which outlive a single recipe run, such as
+ * caches shared between runs on the same host.
+ */
+public class NodeBasedRecipeExecutionContextView extends DelegatingExecutionContext {
+    private static final String NODE_MODULES_CACHE_DIRECTORY = "org.openrewrite.codemods.nodeModulesCacheDirectory";
+    private static final String NODE_MODULES_CACHE_MAX_BYTES = "org.openrewrite.codemods.nodeModulesCacheMaxBytes";
+    private static final String TOOLCHAIN_DIRECTORY = "org.openrewrite.codemods.toolchainDirectory";
+    private static final String HAND_OFF = "org.openrewrite.codemods.handOff";
+    private static final String MATERIALIZATION_POLICY = "org.openrewrite.codemods.materializationPolicy";
+    private static final String METRICS_LISTENER = "org.openrewrite.codemods.metricsListener";
+    private static final String PROCESS_METRICS = "org.openrewrite.codemods.processMetrics";
+    private static final String WORKSPACE_CONCURRENCY = "org.openrewrite.codemods.workspaceConcurrency";
+    private static final String NODE_MEMORY_BUDGET_BYTES = "org.openrewrite.codemods.nodeMemoryBudgetBytes";
+    private static final String NODE_WORKERS = "org.openrewrite.codemods.nodeWorkers";
+    private static final String NODE_WORKER_MAX_JOBS = "org.openrewrite.codemods.nodeWorkerMaxJobs";
+    private static final String NODE_WORKER_MAX_RSS_BYTES = "org.openrewrite.codemods.nodeWorkerMaxRssBytes";
+    private static final String PHASE_TIMEOUT = "org.openrewrite.codemods.phaseTimeout.";
+    private static final String IDLE_TIMEOUT = "org.openrewrite.codemods.idleTimeout";
+    private static final String CHECKPOINTS = "org.openrewrite.codemods.checkpoints";
+    private static final String PREFETCH_MAX_BYTES = "org.openrewrite.codemods.prefetchMaxBytes";
+    private static final String PARSE_MODIFIED_FILES = "org.openrewrite.codemods.parseModifiedFiles";
+    private static final String BLOB_STORE_DIRECTORY = "org.openrewrite.codemods.blobStoreDirectory";
+
+    public NodeBasedRecipeExecutionContextView(ExecutionContext delegate) {
+        super(delegate);
+    }
+
+    public static NodeBasedRecipeExecutionContextView view(ExecutionContext ctx) {
+        if (ctx instanceof NodeBasedRecipeExecutionContextView) {
+            return (NodeBasedRecipeExecutionContextView) ctx;
+        }
+        return new NodeBasedRecipeExecutionContextView(ctx);
+    }
+
+    public NodeBasedRecipeExecutionContextView setNodeModulesCacheDirectory(Path directory) {
+        putMessage(NODE_MODULES_CACHE_DIRECTORY, directory);
+        return this;
+    }
+
+    public Path getNodeModulesCacheDirectory() {
+        return getMessage(NODE_MODULES_CACHE_DIRECTORY,
+                Paths.get(System.getProperty("user.home"), ".rewrite", "cache", "node_modules"));
+    }
+
+    /**
+     * @param maxBytes The disk budget of the project {@code node_modules} cache. Least recently
+     *                 used entries are evicted once it is exceeded. Zero, the default, disables the
+     *                 cache. Cached trees are restored with hardlinks, so a package script that writes
+     *                 into its own files in place would change the cached copy, too.
+     */
+    public NodeBasedRecipeExecutionContextView setNodeModulesCacheMaxBytes(long maxBytes) {
+        putMessage(NODE_MODULES_CACHE_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    public long getNodeModulesCacheMaxBytes() {
+        return getMessage(NODE_MODULES_CACHE_MAX_BYTES, 0L);
+    }
+
+    /**
+     * @param directory Where CLI toolchains such as {@code @angular/cli} are installed once per exact
+     *                  version and shared read-only by all recipe runs on this host.
+     */
+    public NodeBasedRecipeExecutionContextView setToolchainDirectory(Path directory) {
+        putMessage(TOOLCHAIN_DIRECTORY, directory);
+        return this;
+    }
+
+    public Path getToolchainDirectory() {
+        return getMessage(TOOLCHAIN_DIRECTORY,
+                Paths.get(System.getProperty("user.home"), ".rewrite", "cache", "node-toolchains"));
+    }
+
+    public NodeBasedRecipeExecutionContextView setHandOff(HandOff handOff) {
+        putMessage(HAND_OFF, handOff);
+        return this;
+    }
+
+    public HandOff getHandOff() {
+        return getMessage(HAND_OFF, HandOff.MOVE);
+    }
+
+    /**
+     * @param policy Which source files to write to the working tree, in place of the recipe's own, like
+     *               {@link MaterializationPolicy#angular()} to leave out the files Angular migrations
+     *               don't usually read. By default, every file is written.
+     */
+    public NodeBasedRecipeExecutionContextView setMaterializationPolicy(MaterializationPolicy policy) {
+        putMessage(MATERIALIZATION_POLICY, policy);
+        return this;
+    }
+
+    public @Nullable MaterializationPolicy getMaterializationPolicy() {
+        return getMessage(MATERIALIZATION_POLICY);
+    }
+
+    /**
+     * @param listener Notified of the cost of each phase of a node-based recipe run, in addition to the
+     *                 phase timings data table.
+     */
+    public NodeBasedRecipeExecutionContextView setMetricsListener(NodeMetricsListener listener) {
+        putMessage(METRICS_LISTENER, listener);
+        return this;
+    }
+
+    public @Nullable NodeMetricsListener getMetricsListener() {
+        return getMessage(METRICS_LISTENER);
+    }
+
+    /**
+     * @param processMetrics Whether to sample the CPU time, bytes written and peak resident set size of
+     *                       the processes of each phase from {@code /proc} while they run, which scans the
+     *                       environment of every process on the host a few times a second. Off by default.
+     */
+    public NodeBasedRecipeExecutionContextView setProcessMetrics(boolean processMetrics) {
+        putMessage(PROCESS_METRICS, processMetrics);
+        return this;
+    }
+
+    public boolean getProcessMetrics() {
+        return getMessage(PROCESS_METRICS, false);
+    }
+
+    /**
+     * @param concurrency How many Angular workspaces of a repository are installed and updated at the
+     *                    same time.
+     */
+    public NodeBasedRecipeExecutionContextView setWorkspaceConcurrency(int concurrency) {
+        putMessage(WORKSPACE_CONCURRENCY, concurrency);
+        return this;
+    }
+
+    public int getWorkspaceConcurrency() {
+        return getMessage(WORKSPACE_CONCURRENCY, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * @param budgetBytes The memory that node processes started by all recipe runs in this JVM may use
+     *                    together. A process waits until its heap fits in what is left of the budget.
+     */
+    public NodeBasedRecipeExecutionContextView setNodeMemoryBudgetBytes(long budgetBytes) {
+        putMessage(NODE_MEMORY_BUDGET_BYTES, budgetBytes);
+        return this;
+    }
+
+    public long getNodeMemoryBudgetBytes() {
+        Long budgetBytes = getMessage(NODE_MEMORY_BUDGET_BYTES);
+        return budgetBytes == null ? NodeMemoryScheduler.defaultBudgetBytes() : budgetBytes;
+    }
+
+    /**
+     * @param enabled Whether to run the Angular CLI in long-lived node workers, which load the CLI once
+     *                for many workspaces, rather than in a new node process per workspace. Only applies
+     *                to recipes that don't run node through {@code nvm-exec}.
+     */
+    public NodeBasedRecipeExecutionContextView setNodeWorkers(boolean enabled) {
+        putMessage(NODE_WORKERS, enabled);
+        return this;
+    }
+
+    public boolean getNodeWorkers() {
+        return getMessage(NODE_WORKERS, false);
+    }
+
+    /**
+     * @param maxJobs How many workspaces a node worker updates before it is replaced by a fresh one.
+     */
+    public NodeBasedRecipeExecutionContextView setNodeWorkerMaxJobs(int maxJobs) {
+        putMessage(NODE_WORKER_MAX_JOBS, maxJobs);
+        return this;
+    }
+
+    public int getNodeWorkerMaxJobs() {
+        return getMessage(NODE_WORKER_MAX_JOBS, 50);
+    }
+
+    /**
+     * @param maxRssBytes The resident set size past which a node worker is replaced by a fresh one
+     *                    after its current job.
+     */
+    public NodeBasedRecipeExecutionContextView setNodeWorkerMaxRssBytes(long maxRssBytes) {
+        putMessage(NODE_WORKER_MAX_RSS_BYTES, maxRssBytes);
+        return this;
+    }
+
+    public long getNodeWorkerMaxRssBytes() {
+        return getMessage(NODE_WORKER_MAX_RSS_BYTES, 2L * 1024 * 1024 * 1024);
+    }
+
+    /**
+     * @param timeout How long a phase that runs node may take before its processes are killed and the
+     *                run fails with a {@link NodePhaseTimeoutException}, or {@code null} for no limit,
+     *                which is the default.
+     */
+    public NodeBasedRecipeExecutionContextView setPhaseTimeout(NodePhase phase, @Nullable Duration timeout) {
+        putMessage(PHASE_TIMEOUT + phase.name(), timeout == null ? Duration.ZERO : timeout);
+        return this;
+    }
+
+    public @Nullable Duration getPhaseTimeout(NodePhase phase) {
+        Duration timeout = getMessage(PHASE_TIMEOUT + phase.name());
+        return timeout == null || timeout.isZero() ? null : timeout;
+    }
+
+    /**
+     * @param idleTimeout How long the processes of a phase may go without using CPU, doing I/O or
+     *                    starting other processes before they are killed and the run fails with a
+     *                    {@link NodePhaseTimeoutException}, or {@code null} for no limit, which is the
+     *                    default. Only applies where {@code /proc} shows the processes.
+     */
+    public NodeBasedRecipeExecutionContextView setIdleTimeout(@Nullable Duration idleTimeout) {
+        putMessage(IDLE_TIMEOUT, idleTimeout == null ? Duration.ZERO : idleTimeout);
+        return this;
+    }
+
+    public @Nullable Duration getIdleTimeout() {
+        Duration idleTimeout = getMessage(IDLE_TIMEOUT);
+        return idleTimeout == null || idleTimeout.isZero() ? null : idleTimeout;
+    }
+
+    /**
+     * @param enabled Whether to save a checkpoint of each recipe run to its working directory after
+     *                every phase, so that a retry of a failed run in the same working directory resumes
+     *                from it rather than materializing, copying and installing everything again.
+     */
+    public NodeBasedRecipeExecutionContextView setCheckpoints(boolean enabled) {
+        putMessage(CHECKPOINTS, enabled);
+        return this;
+    }
+
+    public boolean getCheckpoints() {
+        return getMessage(CHECKPOINTS, false);
+    }
+
+    /**
+     * @param maxBytes How much of the files node modified is read ahead into memory for the edit phase
+     *                 at a time. Zero disables reading ahead.
+     */
+    public NodeBasedRecipeExecutionContextView setPrefetchMaxBytes(long maxBytes) {
+        putMessage(PREFETCH_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    public long getPrefetchMaxBytes() {
+        return getMessage(PREFETCH_MAX_BYTES, 256L * 1024 * 1024);
+    }
+
+    /**
+     * @param enabled Whether the JSON and YAML files node modified are parsed into JSON and YAML trees,
+     *                so that recipes running later in the same cycle can edit them, rather than returned
+     *                as plain text. Files that don't parse are still returned as plain text. Off by default.
+     */
+    public NodeBasedRecipeExecutionContextView setParseModifiedFiles(boolean enabled) {
+        putMessage(PARSE_MODIFIED_FILES, enabled);
+        return this;
+    }
+
+    public boolean getParseModifiedFiles() {
+        return getMessage(PARSE_MODIFIED_FILES, false);
+    }
+
+    /**
+     * @param directory Where the contents of source files are stored once by hash and hardlinked into
+     *                  the working tree of every recipe run that uses this directory, rather than written
+     *                  to each. Must be on the same file system as the working directories to save
+     *                  anything. Source files are written to each tree unless this is set.
+     */
+    public NodeBasedRecipeExecutionContextView setBlobStoreDirectory(Path directory) {
+        putMessage(BLOB_STORE_DIRECTORY, directory);
+        return this;
+    }
+
+    public @Nullable Path getBlobStoreDirectory() {
+        return getMessage(BLOB_STORE_DIRECTORY);
+    }
+
+    /**
+     * How the working tree of one {@link NodeBasedRecipe} is passed to the next one in the same run.
+     */
+    public enum HandOff {
+        /**
+         * Copy every file of the previous recipe's tree.
+         */
+        COPY,
+
+        /**
+         * Move the previous recipe's tree in place, after saving the files it modified to a journal
+         * that the previous recipe then reads its results from. Falls back to {@link #COPY} when the
+         * tree can't be moved atomically.
+         */
+        MOVE
+    }
+}
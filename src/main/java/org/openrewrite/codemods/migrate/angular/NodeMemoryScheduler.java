@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the heap of each node process to the workspace it works on, and admits node processes
+ * against a memory budget shared by all recipe runs in this JVM, so that many small workspaces can
+ * be migrated side by side while a large one gets the heap it needs. A process that runs out of heap
+ * is retried with twice the heap, once what it left behind is undone.
+ */
+final class NodeMemoryScheduler {
+    /**
+     * The heap for commands that don't load the workspace, like installing a toolchain.
+     */
+    static final long INSTALL_HEAP_MB = 1024;
+
+    private static final long MIN_HEAP_MB = 768;
+    private static final long MAX_HEAP_MB = 16 * 1024;
+
+    /**
+     * What a node process uses beyond its JavaScript heap: code, buffers and the young generation.
+     */
+    private static final long OVERHEAD_MB = 256;
+
+    private static final int MAX_RETRIES = 2;
+    private static final Map<Long, NodeMemoryScheduler> BY_BUDGET = new ConcurrentHashMap<>();
+
+    private final long budgetMb;
+    private final Semaphore available;
+
+    private NodeMemoryScheduler(long budgetMb) {
+        this.budgetMb = budgetMb;
+        this.available = new Semaphore((int) budgetMb, true);
+    }
+
+    /**
+     * @return The scheduler shared by every run in this JVM with the same budget.
+     */
+    static NodeMemoryScheduler forBudget(long budgetBytes) {
+        long budgetMb = Math.max(MIN_HEAP_MB + OVERHEAD_MB, Math.min(Integer.MAX_VALUE, budgetBytes / (1024 * 1024)));
+        return BY_BUDGET.computeIfAbsent(budgetMb, NodeMemoryScheduler::new);
+    }
+
+    /**
+     * @return Three quarters of the physical memory this JVM's own heap leaves over, if the physical
+     * memory is known.
+     */
+    static long defaultBudgetBytes() {
+        long physical = 0;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            physical = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        long jvm = Runtime.getRuntime().maxMemory();
+        if (physical <= jvm) {
+            return 8L * 1024 * 1024 * 1024;
+        }
+        return (physical - jvm) / 4 * 3;
+    }
+
+    /**
+     * Estimate the heap a node process loading a workspace needs. The TypeScript compiler keeps
+     * several times the size of the sources in memory, on top of a fixed cost per file.
+     *
+     * @param files The number of files in the workspace.
+     * @param bytes Their total size.
+     */
+    static long heapMb(long files, long bytes) {
+        long mb = 512 + files * 48 / 1000 + bytes * 6 / (1024 * 1024);
+        // round up to a multiple of 256 MB, so that similar workspaces get the same heap
+        mb = (mb + 255) / 256 * 256;
+        return Math.max(MIN_HEAP_MB, Math.min(MAX_HEAP_MB, mb));
+    }
+
+    /**
+     * Run a command that can run again as it is if it fails, like an install, once enough of the budget
+     * is free for a heap of {@code heapMb}, retrying with a larger heap if it runs out of memory.
+     *
+     * @param environment The environment of the command, to which {@code NODE_OPTIONS} is added.
+     */
+    <T> T run(long heapMb, Map<String, String> environment, Command<T> command) throws IOException {
+        return run(heapMb, environment, () -> {
+        }, command);
+    }
+
+    /**
+     * Run a node command once enough of the budget is free for a heap of {@code heapMb}, retrying with
+     * a larger heap if it runs out of memory.
+     *
+     * @param environment The environment of the command, to which {@code NODE_OPTIONS} is added.
+     * @param retry       Undoes what a failed attempt changed before the command runs again, or
+     *                    {@code null} to not retry a command whose attempts can't be undone.
+     */
+    <T> T run(long heapMb, Map<String, String> environment, @Nullable Retry retry, Command<T> command) throws IOException {
+        long heap = heapMb;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0 && retry != null) {
+                retry.prepare();
+            }
+            int reserved = (int) Math.min(budgetMb, heap + OVERHEAD_MB);
+            try {
+                if (!available.tryAcquire(reserved, 0, TimeUnit.MILLISECONDS)) {
+                    // idle node workers hold on to memory that a command is waiting for
+                    NodeWorker.evictIdle(this);
+                    available.acquire(reserved);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory to run node");
+            }
+            try {
+                Map<String, String> env = new HashMap<>(environment);
+                env.put("NODE_OPTIONS", nodeOptions(env.containsKey("NODE_OPTIONS") ?
+                        env.get("NODE_OPTIONS") : System.getenv("NODE_OPTIONS"), heap));
+                return command.run(env);
+            } catch (IOException | RuntimeException e) {
+                if (retry == null || attempt >= MAX_RETRIES || heap >= MAX_HEAP_MB || !isOutOfMemory(e)) {
+                    throw e;
+                }
+                heap = Math.min(MAX_HEAP_MB, heap * 2);
+            } finally {
+                available.release(reserved);
+            }
+        }
+    }
+
+    /**
+     * Reserve memory for something other than a command, like an idle node worker, if it is free now.
+     *
+     * @return Whether the memory was reserved, in which case it must be given back with {@link #unreserve}.
+     */
+    boolean tryReserve(int mb) {
+        try {
+            // waits for nothing, but unlike tryAcquire(mb) doesn't take memory a command is queued for
+            return mb <= budgetMb && available.tryAcquire(mb, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void unreserve(int mb) {
+        available.release(mb);
+    }
+
+    private static String nodeOptions(@Nullable String inherited, long heapMb) {
+        StringBuilder options = new StringBuilder("--max-old-space-size=").append(heapMb);
+        if (inherited != null) {
+            for (String option : inherited.trim().split("\\s+")) {
+                if (!option.isEmpty() && !option.startsWith("--max-old-space-size")) {
+                    options.append(' ').append(option);
+                }
+            }
+        }
+        return options.toString();
+    }
+
+    /**
+     * @return Whether the failure is node running out of heap, going by the fatal error V8 prints.
+     */
+    static boolean isOutOfMemory(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && (message.contains("heap out of memory") ||
+                    message.contains("Reached heap limit") ||
+                    message.contains("Allocation failed - process out of memory"))) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    interface Command<T> {
+        T run(Map<String, String> environment) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Retry {
+        void prepare() throws IOException;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed cache of project {@code node_modules} directories, keyed by the
+ * lockfile, {@code .npmrc} and Node version that produced them. Entries are stored and restored
+ * with hardlinks, so a hit costs one link per file rather than an {@code npm install}.
+ * <p>
+ * npm rewrites some files in place, such as the hidden lockfile, which would write through to
+ * the cache and to every tree restored from it. The hidden files at the top of the tree are
+ * therefore copied, and node must run in a tree linked to the cache with the script of
+ * {@link BlobStore#nodeOptions} preloaded, which replaces any other linked file by a copy of its
+ * own before writing to it.
+ */
+class NodeModulesCache {
+    private static final String LAST_USED = ".last-used";
+    private static final String SIZE = ".size";
+    private static final String LOCK = ".lock";
+
+    /**
+     * Serializes access from within this JVM, since {@link FileChannel#lock()} only excludes
+     * other processes.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path root;
+    private final long maxBytes;
+
+    NodeModulesCache(Path root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    static @Nullable NodeModulesCache create(NodeBasedRecipeExecutionContextView ctx) {
+        long maxBytes = ctx.getNodeModulesCacheMaxBytes();
+        return maxBytes <= 0 ? null : new NodeModulesCache(ctx.getNodeModulesCacheDirectory(), maxBytes);
+    }
+
+    /**
+     * @return The cache key for the project in {@code projectDir}, or {@code null} if the project
+     * has no lockfile to key on.
+     */
+    static @Nullable String key(Path projectDir, String nodeVersion) {
+        Path lockfile = projectDir.resolve("package-lock.json");
+        if (!Files.isRegularFile(lockfile)) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Files.readAllBytes(lockfile));
+            digest.update((byte) 0);
+            Path npmrc = projectDir.resolve(".npmrc");
+            if (Files.isRegularFile(npmrc)) {
+                digest.update(Files.readAllBytes(npmrc));
+            }
+            digest.update((byte) 0);
+            digest.update(nodeVersion.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return {@code true} if an entry for {@code key} existed and was linked into {@code target}.
+     */
+    boolean restore(String key, Path target) {
+        if (Files.exists(target)) {
+            return false;
+        }
+        return withLock(() -> {
+            Path entry = root.resolve(key);
+            if (!Files.isDirectory(entry.resolve("node_modules"))) {
+                return false;
+            }
+            try {
+                FileTrees.link(entry.resolve("node_modules"), target, NodeModulesCache::rewrittenInPlace);
+                Files.setLastModifiedTime(entry.resolve(LAST_USED), FileTime.fromMillis(System.currentTimeMillis()));
+                return true;
+            } catch (IOException e) {
+                // a partially restored tree is worse than none; let npm install start from scratch
+                try {
+                    FileTrees.delete(target);
+                } catch (IOException ignored) {
+                }
+                return false;
+            }
+        });
+    }
+
+    void store(String key, Path source) {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+        try {
+            long size = FileTrees.size(source);
+            if (size > maxBytes) {
+                return;
+            }
+
+            Files.createDirectories(root);
+            Path staging = root.resolve(".staging-" + UUID.randomUUID());
+            try {
+                FileTrees.link(source, staging.resolve("node_modules"), NodeModulesCache::rewrittenInPlace);
+                Files.write(staging.resolve(SIZE), Long.toString(size).getBytes(StandardCharsets.UTF_8));
+                Files.write(staging.resolve(LAST_USED), new byte[0]);
+                withLock(() -> {
+                    Path entry = root.resolve(key);
+                    if (!Files.exists(entry)) {
+                        Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    evict();
+                    return null;
+                });
+            } finally {
+                FileTrees.delete(staging);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Whether npm rewrites the file at a path relative to {@code node_modules} in place, like
+     * {@code .package-lock.json}, which it writes after every install.
+     */
+    static boolean rewrittenInPlace(Path relativePath) {
+        return relativePath.getNameCount() == 1 && relativePath.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Delete least recently used entries until the cache fits its disk budget. Must be called
+     * with the lock held.
+     */
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(root)) {
+            entries = list
+                    .filter(p -> !p.getFileName().toString().startsWith("."))
+                    .filter(p -> Files.exists(p.resolve(LAST_USED)))
+                    .collect(Collectors.toList());
+        }
+
+        Map<Path, Long> lastUsed = new HashMap<>();
+        long total = 0;
+        for (Path entry : entries) {
+            lastUsed.put(entry, Files.getLastModifiedTime(entry.resolve(LAST_USED)).toMillis());
+            total += entrySize(entry);
+        }
+        entries.sort(Comparator.comparing(lastUsed::get));
+
+        for (Iterator<Path> iter = entries.iterator(); total > maxBytes && iter.hasNext(); ) {
+            Path entry = iter.next();
+            total -= entrySize(entry);
+            FileTrees.delete(entry);
+        }
+    }
+
+    private static long entrySize(Path entry) throws IOException {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(entry.resolve(SIZE)), StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return FileTrees.size(entry);
+        }
+    }
+
+    private <T> T withLock(IOCallable<T> action) {
+        synchronized (JVM_LOCK) {
+            try {
+                Files.createDirectories(root);
+                try (FileChannel channel = FileChannel.open(root.resolve(LOCK),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock ignored = channel.lock()) {
+                    return action.call();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reads what a {@link NodeBasedRecipe}'s command prints in one workspace, a line at a time, so that
+ * the recipe can report on the run and stop it when the command reports a failure.
+ */
+public interface NodeOutputListener {
+    void line(String line);
+
+    /**
+     * Called once the command has exited, whether it succeeded or not.
+     *
+     * @return The failure the output reported, if any, which fails the recipe run before the
+     * changes node made are picked up.
+     */
+    @Nullable
+    String completed();
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+/**
+ * The phases of a {@link NodeBasedRecipe} run, in the order they happen.
+ */
+public enum NodePhase {
+    /**
+     * Visiting the source files in the scanning phase, including handing them over to be written.
+     */
+    SCAN,
+
+    /**
+     * Writing the source files to the working tree, from the first file handed over until the last is
+     * written. Overlaps with {@link #SCAN}.
+     */
+    MATERIALIZE,
+
+    /**
+     * Taking over the working tree of the previous recipe.
+     */
+    HAND_OFF,
+
+    /**
+     * Installing {@code node-gyp} and {@code nan}, or finding them already installed.
+     */
+    INSTALL_NODE_GYP,
+
+    /**
+     * Installing the CLI that runs the codemod, or finding it already installed.
+     */
+    INSTALL_CLI,
+
+    /**
+     * Installing the project's dependencies, or restoring them from the cache.
+     */
+    INSTALL_PROJECT,
+
+    /**
+     * Running the codemod itself, such as {@code ng update}.
+     */
+    RUN,
+
+    /**
+     * Finding the files the codemod changed.
+     */
+    DETECT_CHANGES,
+
+    /**
+     * Reading the changed files back into source files.
+     */
+    CREATE_AFTER
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times one {@link NodePhase}, along with the processes it runs if it runs any.
+ */
+final class NodePhaseMeter implements Closeable {
+    private final NodePhase phase;
+    private final long startNanos = System.nanoTime();
+
+    @Nullable
+    private final ProcessTreeMonitor processes;
+
+    private NodePhaseMeter(NodePhase phase, @Nullable ProcessTreeMonitor processes) {
+        this.phase = phase;
+        this.processes = processes;
+    }
+
+    static NodePhaseMeter start(NodePhase phase) {
+        return new NodePhaseMeter(phase, null);
+    }
+
+    /**
+     * Start timing a phase that runs child processes.
+     *
+     * @param processes What samples the phase's processes, if they are measured too.
+     */
+    static NodePhaseMeter startProcesses(NodePhase phase, @Nullable ProcessTreeMonitor processes) {
+        return new NodePhaseMeter(phase, processes);
+    }
+
+    /**
+     * @param bytesWritten What the phase wrote itself, if it doesn't run child processes.
+     */
+    NodePhaseMetrics stop(String recipe, @Nullable Path workspace, @Nullable Long bytesWritten, @Nullable Long files) {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        String ws = workspace == null ? null : workspace.toString();
+        if (processes == null) {
+            return new NodePhaseMetrics(recipe, ws, phase, durationMillis, null, null, bytesWritten, files, null, null);
+        }
+        processes.close();
+        return new NodePhaseMetrics(recipe, ws, phase, durationMillis, processes.getCpuMillis(),
+                processes.getPeakRssBytes(), processes.getBytesWritten(), files, null, null);
+    }
+
+    @Override
+    public void close() {
+        if (processes != null) {
+            processes.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * What one {@link NodePhase} of a {@link NodeBasedRecipe} run cost. Resources of child processes are
+ * only known on Linux, only for the phases that run node, and only if
+ * {@link NodeBasedRecipeExecutionContextView#setProcessMetrics process metrics} are on.
+ */
+@Value
+public class NodePhaseMetrics {
+    String recipe;
+
+    /**
+     * The {@code angular.json} of the workspace, if known.
+     */
+    @Nullable
+    String workspace;
+
+    NodePhase phase;
+
+    long durationMillis;
+
+    /**
+     * User and system CPU time of the processes the phase ran, as far as {@link ProcessTreeMonitor} saw them.
+     */
+    @Nullable
+    Long childCpuMillis;
+
+    /**
+     * The largest peak resident set size of any single process the phase ran.
+     */
+    @Nullable
+    Long childPeakRssBytes;
+
+    /**
+     * The bytes the phase wrote itself, or that the processes it ran wrote, as far as
+     * {@link ProcessTreeMonitor} saw them.
+     */
+    @Nullable
+    Long bytesWritten;
+
+    /**
+     * The number of files the phase wrote, copied or found changed.
+     */
+    @Nullable
+    Long files;
+
+    /**
+     * The number of source files the {@link MaterializationPolicy} kept the phase from writing.
+     */
+    @Nullable
+    Long skippedFiles;
+
+    /**
+     * The size of the source files the {@link MaterializationPolicy} kept the phase from writing, as
+     * far as their attributes tell.
+     */
+    @Nullable
+    Long skippedBytes;
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.Getter;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Thrown when a {@link NodePhase} is stopped because it ran past its timeout, or because its processes
+ * stopped making progress. Its processes have been killed by the time it is thrown, so a batch
+ * scheduler can hand the repository to another attempt or skip it right away.
+ */
+@Getter
+public class NodePhaseTimeoutException extends RuntimeException {
+    private final String recipe;
+    private final NodePhase phase;
+
+    /**
+     * The {@code angular.json} of the workspace the phase ran in, if it ran in just one.
+     */
+    @Nullable
+    private final Path workspace;
+
+    /**
+     * Whether the phase was stopped because its processes made no progress, rather than because it
+     * ran past its timeout.
+     */
+    private final boolean idle;
+
+    /**
+     * How long the phase had run.
+     */
+    private final long elapsedMillis;
+
+    /**
+     * The phases that completed before this one, in the order they completed, which for concurrently
+     * updated workspaces includes those of the other workspaces.
+     */
+    private final List<NodePhase> completedPhases;
+
+    public NodePhaseTimeoutException(String recipe, NodePhase phase, @Nullable Path workspace, boolean idle,
+                                     long elapsedMillis, List<NodePhase> completedPhases, @Nullable Throwable cause) {
+        super(recipe + " stopped " + phase + (workspace == null ? "" : " of " + workspace) + " after " + elapsedMillis + " ms" +
+              (idle ? ", as its processes made no progress" : ", as it ran past its timeout"), cause);
+        this.recipe = recipe;
+        this.phase = phase;
+        this.workspace = workspace;
+        this.idle = idle;
+        this.elapsedMillis = elapsedMillis;
+        this.completedPhases = completedPhases;
+    }
+}
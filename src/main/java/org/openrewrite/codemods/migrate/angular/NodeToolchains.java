@@ -0,0 +1,343 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * A store of npm packages installed once per exact version and then shared read-only by every
+ * recipe run on the host. A package spec with a range or dist-tag (e.g. {@code @angular/cli@17})
+ * is resolved through an alias that is refreshed daily, but a stale alias is still used when
+ * the registry cannot be reached, so runs keep working offline.
+ * <p>
+ * A toolchain matching the packages installed into {@code codemods/node_modules} at build time
+ * is seeded from the classpath instead of the registry, as long as those include every package the
+ * toolchain needs.
+ */
+class NodeToolchains {
+    private static final String ALIASES = ".aliases";
+    private static final String CHECKSUM = ".checksum";
+    private static final String LOCK = ".lock";
+    private static final long ALIAS_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final Pattern EXACT_VERSION = Pattern.compile("\\d+\\.\\d+\\.\\d+([-+].*)?");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Serializes access from within this JVM, since {@link FileChannel#lock()} only excludes
+     * other processes.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    /**
+     * Held while seeding from a jar, whose file system is closed again after each seed.
+     */
+    private static final Object SEED_LOCK = new Object();
+
+    /**
+     * Toolchains whose checksum has already been verified by this JVM.
+     */
+    private static final Set<Path> VERIFIED = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Path root;
+
+    NodeToolchains(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * @param packageSpec A package spec like {@code @angular/cli@17}, whose resolved version keys the toolchain.
+     * @param installer   Installs the toolchain into the prefix directory it is given.
+     * @return The toolchain directory, containing a {@code node_modules} directory.
+     */
+    Path provision(String packageSpec, Installer installer) {
+        return provision(packageSpec, Collections.emptyList(), installer);
+    }
+
+    /**
+     * @param companions Package specs like {@code nan@2} that the installer installs alongside the
+     *                   package, and that a toolchain is missing if it doesn't have them.
+     */
+    Path provision(String packageSpec, List<String> companions, Installer installer) {
+        String name = name(packageSpec);
+        String version = version(packageSpec);
+        boolean exact = EXACT_VERSION.matcher(version).matches();
+
+        try {
+            Path alias = root.resolve(ALIASES).resolve(directoryName(name, version));
+            Path resolved = exact ? root.resolve(directoryName(name, version)) : readAlias(alias);
+            if (resolved != null && (exact || isFresh(alias)) && isComplete(resolved, companions)) {
+                return resolved;
+            }
+
+            try {
+                Path installed = install(name, version, companions, installer);
+                if (!exact) {
+                    Files.createDirectories(alias.getParent());
+                    Files.write(alias, installed.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                }
+                return installed;
+            } catch (RuntimeException | IOException e) {
+                if (resolved != null && isComplete(resolved, companions)) {
+                    // the registry is unreachable, but an older resolution of this spec is still usable
+                    return resolved;
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path install(String name, String version, List<String> companions, Installer installer) throws IOException {
+        Files.createDirectories(root);
+        Path staging = root.resolve(".staging-" + UUID.randomUUID());
+        try {
+            Files.createDirectories(staging);
+            if (!seedFromClasspath(name, version, companions, staging)) {
+                installer.install(staging);
+            }
+
+            Path target = root.resolve(directoryName(name, installedVersion(staging, name)));
+            Files.write(staging.resolve(CHECKSUM), checksum(staging).getBytes(StandardCharsets.UTF_8));
+            makeReadOnly(staging);
+
+            // other processes provisioning the same toolchain may be checking or replacing the target too
+            synchronized (JVM_LOCK) {
+                try (FileChannel channel = FileChannel.open(root.resolve(LOCK),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock ignored = channel.lock()) {
+                    if (Files.exists(target)) {
+                        if (isComplete(target, companions)) {
+                            return target;
+                        }
+                        FileTrees.delete(target);
+                    }
+                    Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+                    VERIFIED.add(target);
+                }
+            }
+            return target;
+        } finally {
+            FileTrees.delete(staging);
+        }
+    }
+
+    private boolean verify(Path toolchain) throws IOException {
+        if (VERIFIED.contains(toolchain)) {
+            return true;
+        }
+        Path checksum = toolchain.resolve(CHECKSUM);
+        if (!Files.isRegularFile(checksum)) {
+            return false;
+        }
+        if (new String(Files.readAllBytes(checksum), StandardCharsets.UTF_8).equals(checksum(toolchain))) {
+            VERIFIED.add(toolchain);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isComplete(Path toolchain, List<String> companions) throws IOException {
+        for (String companion : companions) {
+            if (!Files.isRegularFile(toolchain.resolve("node_modules").resolve(name(companion)).resolve("package.json"))) {
+                return false;
+            }
+        }
+        return verify(toolchain);
+    }
+
+    private boolean seedFromClasspath(String name, String version, List<String> companions, Path staging) throws IOException {
+        URL manifest = packagedManifest(name, version);
+        if (manifest == null) {
+            return false;
+        }
+        for (String companion : companions) {
+            if (packagedManifest(name(companion), version(companion)) == null) {
+                // the installer installs more than the build did
+                return false;
+            }
+        }
+
+        try {
+            URI uri = manifest.toURI();
+            if (!"jar".equals(uri.getScheme())) {
+                seed(Paths.get(uri), name, staging);
+                return true;
+            }
+            synchronized (SEED_LOCK) {
+                FileSystem jar;
+                try {
+                    jar = FileSystems.newFileSystem(uri, emptyMap());
+                } catch (FileSystemAlreadyExistsException e) {
+                    // opened by someone else, who closes it
+                    seed(Paths.get(uri), name, staging);
+                    return true;
+                }
+                try (FileSystem ignored = jar) {
+                    seed(Paths.get(uri), name, staging);
+                }
+                return true;
+            }
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static void seed(Path manifest, String name, Path staging) throws IOException {
+        Path nodeModules = manifest.getParent();
+        for (int i = 0; i < name.split("/").length; i++) {
+            nodeModules = nodeModules.getParent();
+        }
+        FileTrees.copy(nodeModules, staging.resolve("node_modules"));
+    }
+
+    /**
+     * @return The {@code package.json} of the package installed at build time, if its version matches.
+     */
+    private static @Nullable URL packagedManifest(String name, String version) throws IOException {
+        URL manifest = NodeToolchains.class.getClassLoader().getResource("codemods/node_modules/" + name + "/package.json");
+        if (manifest == null) {
+            return null;
+        }
+        String packaged;
+        try (InputStream in = manifest.openStream()) {
+            packaged = MAPPER.readTree(in).path("version").asText();
+        }
+        return packaged.equals(version) || packaged.startsWith(version + ".") ? manifest : null;
+    }
+
+    private static String name(String packageSpec) {
+        int at = packageSpec.lastIndexOf('@');
+        return at > 0 ? packageSpec.substring(0, at) : packageSpec;
+    }
+
+    private static String version(String packageSpec) {
+        int at = packageSpec.lastIndexOf('@');
+        return at > 0 ? packageSpec.substring(at + 1) : "latest";
+    }
+
+    private static String installedVersion(Path prefix, String name) throws IOException {
+        Path manifest = prefix.resolve("node_modules").resolve(name).resolve("package.json");
+        if (!Files.isRegularFile(manifest)) {
+            throw new IllegalStateException("Failed to install " + name + " into " + prefix);
+        }
+        JsonNode version = MAPPER.readTree(manifest.toFile()).path("version");
+        if (!version.isTextual()) {
+            throw new IllegalStateException("No version in " + manifest);
+        }
+        return version.asText();
+    }
+
+    private static @Nullable Path readAlias(Path alias) throws IOException {
+        if (!Files.isRegularFile(alias)) {
+            return null;
+        }
+        return alias.getParent().resolveSibling(new String(Files.readAllBytes(alias), StandardCharsets.UTF_8).trim());
+    }
+
+    private static boolean isFresh(Path alias) throws IOException {
+        return System.currentTimeMillis() - Files.getLastModifiedTime(alias).toMillis() < ALIAS_TTL_MILLIS;
+    }
+
+    private static String directoryName(String name, String version) {
+        return (name + "@" + version).replaceAll("[^A-Za-z0-9._@-]", "+");
+    }
+
+    /**
+     * A digest of every file path and file content in the toolchain, other than the checksum itself.
+     */
+    private static String checksum(Path toolchain) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<Path> files = new ArrayList<>();
+            Files.walkFileTree(toolchain, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!file.getParent().equals(toolchain) || !file.getFileName().toString().equals(CHECKSUM)) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Collections.sort(files);
+            for (Path file : files) {
+                digest.update(toolchain.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                if (Files.isSymbolicLink(file)) {
+                    digest.update(Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void makeReadOnly(Path toolchain) throws IOException {
+        Files.walkFileTree(toolchain, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.toFile().setWritable(false, false);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                // so that nothing can be added to or removed from the toolchain either
+                //noinspection ResultOfMethodCallIgnored
+                dir.toFile().setWritable(false, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    interface Installer {
+        void install(Path prefix) throws IOException;
+    }
+}
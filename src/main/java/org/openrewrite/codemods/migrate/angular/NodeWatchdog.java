@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kills the processes of a {@link NodePhase} that runs past its deadline, or whose processes stop
+ * making progress, so that a hung {@code npm install} or {@code ng update} doesn't hold on to the
+ * thread running it. The processes of a phase are those its {@link ProcessTreeMonitor} finds, and
+ * make progress as long as they use CPU, do I/O or start new processes. Where there is no
+ * {@code /proc}, or the phase has no processes to kill at its deadline, the thread running the phase
+ * is interrupted instead. A phase with neither a deadline nor an idle timeout isn't watched at all.
+ */
+final class NodeWatchdog implements Closeable {
+    private static final long CHECK_MILLIS = 1000;
+    private static final ThreadLocal<NodeWatchdog> CURRENT = new ThreadLocal<>();
+    private static final ScheduledExecutorService CHECKS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rewrite-codemods-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final @Nullable ProcessTreeMonitor monitor;
+    private final Thread owner;
+    private final @Nullable Long deadlineNanos;
+    private final @Nullable Long idleNanos;
+    private final List<Process> processes = new ArrayList<>();
+    private final @Nullable ScheduledFuture<?> checks;
+
+    private long progress = -1;
+    private long lastProgressNanos = System.nanoTime();
+    private volatile @Nullable Expiry expiry;
+    private boolean interrupted;
+
+    private NodeWatchdog(@Nullable Long deadlineNanos, @Nullable Long idleNanos, @Nullable ProcessTreeMonitor monitor) {
+        this.monitor = monitor;
+        this.owner = Thread.currentThread();
+        this.deadlineNanos = deadlineNanos;
+        this.idleNanos = idleNanos;
+        // checking on a phase that can't expire would only cost
+        this.checks = deadlineNanos == null && idleNanos == null ? null :
+                CHECKS.scheduleWithFixedDelay(this::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start watching a phase run by the current thread.
+     *
+     * @param timeout     How long the phase may take, or {@code null} for no deadline.
+     * @param idleTimeout How long the phase's processes may go without progress, or {@code null}.
+     * @param monitor     What finds the phase's processes, or {@code null} if there is no {@code /proc}
+     *                    to find them in.
+     */
+    static NodeWatchdog start(@Nullable Duration timeout, @Nullable Duration idleTimeout, @Nullable ProcessTreeMonitor monitor) {
+        NodeWatchdog watchdog = new NodeWatchdog(
+                timeout == null ? null : System.nanoTime() + timeout.toNanos(),
+                idleTimeout == null ? null : idleTimeout.toNanos(), monitor);
+        CURRENT.set(watchdog);
+        return watchdog;
+    }
+
+    /**
+     * Also kill {@code process} when the phase running on the current thread expires, for processes
+     * that weren't started with the phase's environment, like a long-lived node worker.
+     */
+    static void watch(Process process) {
+        NodeWatchdog watchdog = CURRENT.get();
+        if (watchdog != null) {
+            synchronized (watchdog) {
+                watchdog.processes.add(process);
+            }
+        }
+    }
+
+    /**
+     * @return Why the phase was stopped, or {@code null} if it wasn't.
+     */
+    @Nullable
+    Expiry getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * @return Whether the phase can expire, and its processes are checked on.
+     */
+    boolean isWatching() {
+        return checks != null;
+    }
+
+    @Override
+    public void close() {
+        if (checks != null) {
+            checks.cancel(false);
+        }
+        CURRENT.remove();
+        synchronized (this) {
+            processes.clear();
+            if (interrupted) {
+                // the interrupt was meant for the phase, not for whatever the thread does next
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private synchronized void check() {
+        if (checks == null || checks.isCancelled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<String> pids = monitor == null ? Collections.emptyList() : monitor.getProcesses();
+        if (expiry == null) {
+            long current = monitor == null ? 0 : monitor.getProgress();
+            if (pids.isEmpty() || current != progress) {
+                progress = current;
+                lastProgressNanos = now;
+            }
+            if (deadlineNanos != null && now - deadlineNanos >= 0) {
+                expiry = Expiry.DEADLINE;
+            } else if (idleNanos != null && now - lastProgressNanos >= idleNanos) {
+                expiry = Expiry.IDLE;
+            } else {
+                return;
+            }
+        }
+
+        // keep killing, in case a process spawned another one while it was being killed
+        boolean killed = kill(pids);
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+                killed = true;
+            }
+        }
+        if (!killed && !interrupted) {
+            interrupted = true;
+            owner.interrupt();
+        }
+    }
+
+    private static boolean kill(List<String> pids) {
+        if (pids.isEmpty()) {
+            return false;
+        }
+        List<String> command = new ArrayList<>(Arrays.asList("kill", "-KILL"));
+        command.addAll(pids);
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).start().waitFor(5, TimeUnit.SECONDS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    enum Expiry {
+        /**
+         * The phase ran past its deadline.
+         */
+        DEADLINE,
+
+        /**
+         * The phase's processes made no progress for too long.
+         */
+        IDLE
+    }
+}
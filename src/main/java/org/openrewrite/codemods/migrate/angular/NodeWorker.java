@@ -0,0 +1,387 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jspecify.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A node process that stays up between recipe runs and runs the Angular CLI in-process, so that node
+ * starts and the CLI and its schematics engine are loaded once per worker instead of once per
+ * workspace. Workers are pooled by CLI toolchain and node options. A worker is recycled once it has run
+ * a number of jobs or its memory has grown past a threshold, since modules loaded by a job, like the
+ * ES modules of a workspace's migrations, can't be unloaded again. Idle workers exit after a while.
+ * An idle worker keeps the memory it uses reserved in the {@link NodeMemoryScheduler} its last command
+ * ran under, and exits early if a command of that scheduler has to wait for memory.
+ */
+final class NodeWorker implements Closeable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SCRIPT = "codemods/ng-worker.js";
+    private static final String MARKER = "#ng-worker# ";
+    private static final String OUTPUT = "#ng-worker-output# ";
+    private static final long IDLE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int OUTPUT_TAIL = 4096;
+
+    private static final Map<String, Deque<NodeWorker>> IDLE = new HashMap<>();
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rewrite-codemods-node-worker-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static @Nullable Path script;
+
+    private final String key;
+    private final Process process;
+    private final Writer requests;
+    private final BufferedReader responses;
+    private final Path stderr;
+
+    private int jobs;
+    private long rssBytes;
+    private long idleSince;
+
+    /**
+     * Where the memory of an idle worker is reserved.
+     */
+    private @Nullable NodeMemoryScheduler reservedFrom;
+    private int reservedMb;
+
+    private NodeWorker(String key, Process process, Path stderr) {
+        this.key = key;
+        this.process = process;
+        this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        this.responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        this.stderr = stderr;
+    }
+
+    /**
+     * Run the Angular CLI in a pooled worker, like {@code node <cli>/bin/ng.js <args>} would in {@code dir}.
+     *
+     * @param cli         The {@code @angular/cli} package directory.
+     * @param environment The environment of the command. Its {@code NODE_OPTIONS} apply to the worker
+     *                    process, the rest to the command only.
+     * @param scheduler   What the command runs under, and the worker's memory stays reserved in while it is idle.
+     * @param maxJobs     How many commands a worker runs before it is recycled.
+     * @param maxRssBytes The resident set size past which a worker is recycled.
+     * @param lines       Receives each line the command prints, as it is printed.
+     * @return A file with everything the command printed.
+     * @throws IOException If the command exits with a non-zero code or the worker dies.
+     */
+    static Path run(Path cli, Path dir, List<String> args, Map<String, String> environment, NodeMemoryScheduler scheduler,
+                    int maxJobs, long maxRssBytes, @Nullable Consumer<String> lines) throws IOException {
+        NodeWorker worker = borrow(cli, environment);
+        // killed along with the phase if it hangs, after which the pool drops the dead worker
+        NodeWatchdog.watch(worker.process);
+        boolean reusable = false;
+        try {
+            Path out = Files.createTempFile("ng-worker", ".out");
+            try {
+                int exitCode;
+                try (Output output = new Output(out, lines)) {
+                    exitCode = worker.send(cli, dir, args, environment, output);
+                }
+                reusable = worker.jobs < maxJobs && worker.rssBytes < maxRssBytes;
+                if (exitCode != 0) {
+                    throw new IOException("Angular CLI exited with code " + exitCode + ":\n" + tail(out));
+                }
+                return out;
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(out);
+                throw e;
+            }
+        } finally {
+            if (reusable) {
+                giveBack(worker, scheduler);
+            } else {
+                worker.close();
+            }
+        }
+    }
+
+    /**
+     * @return How many idle workers the pool holds, for tests.
+     */
+    static int idle() {
+        synchronized (IDLE) {
+            int idle = 0;
+            for (Deque<NodeWorker> workers : IDLE.values()) {
+                idle += workers.size();
+            }
+            return idle;
+        }
+    }
+
+    private static NodeWorker borrow(Path cli, Map<String, String> environment) throws IOException {
+        String key = cli.toAbsolutePath().normalize() + File.pathSeparator + environment.get("NODE_OPTIONS");
+        synchronized (IDLE) {
+            Deque<NodeWorker> workers = IDLE.get(key);
+            while (workers != null && !workers.isEmpty()) {
+                NodeWorker worker = workers.pop();
+                // the memory it uses is reserved by the command it is borrowed for from now on
+                worker.unreserve();
+                if (worker.process.isAlive()) {
+                    return worker;
+                }
+                worker.close();
+            }
+        }
+        return start(key, cli, environment);
+    }
+
+    private static void giveBack(NodeWorker worker, NodeMemoryScheduler scheduler) {
+        int mb = (int) Math.max(1, (worker.rssBytes + (1 << 20) - 1) >> 20);
+        if (!scheduler.tryReserve(mb)) {
+            // the memory is needed by the commands running now
+            worker.close();
+            return;
+        }
+        worker.reservedFrom = scheduler;
+        worker.reservedMb = mb;
+        worker.idleSince = System.currentTimeMillis();
+        synchronized (IDLE) {
+            IDLE.computeIfAbsent(worker.key, k -> new ArrayDeque<>()).push(worker);
+        }
+        REAPER.schedule(NodeWorker::reap, IDLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void reap() {
+        long now = System.currentTimeMillis();
+        List<NodeWorker> expired = new ArrayList<>();
+        synchronized (IDLE) {
+            for (Iterator<Deque<NodeWorker>> i = IDLE.values().iterator(); i.hasNext(); ) {
+                Deque<NodeWorker> workers = i.next();
+                for (Iterator<NodeWorker> j = workers.iterator(); j.hasNext(); ) {
+                    NodeWorker worker = j.next();
+                    if (now - worker.idleSince >= IDLE_MILLIS || !worker.process.isAlive()) {
+                        j.remove();
+                        expired.add(worker);
+                    }
+                }
+                if (workers.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        for (NodeWorker worker : expired) {
+            worker.close();
+        }
+    }
+
+    /**
+     * Stop the idle workers whose memory is reserved in {@code scheduler}, for a command that needs it.
+     */
+    static void evictIdle(NodeMemoryScheduler scheduler) {
+        List<NodeWorker> evicted = new ArrayList<>();
+        synchronized (IDLE) {
+            for (Iterator<Deque<NodeWorker>> i = IDLE.values().iterator(); i.hasNext(); ) {
+                Deque<NodeWorker> workers = i.next();
+                for (Iterator<NodeWorker> j = workers.iterator(); j.hasNext(); ) {
+                    NodeWorker worker = j.next();
+                    if (worker.reservedFrom == scheduler) {
+                        j.remove();
+                        evicted.add(worker);
+                    }
+                }
+                if (workers.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        for (NodeWorker worker : evicted) {
+            worker.close();
+        }
+    }
+
+    private void unreserve() {
+        if (reservedFrom != null) {
+            reservedFrom.unreserve(reservedMb);
+            reservedFrom = null;
+            reservedMb = 0;
+        }
+    }
+
+    private static NodeWorker start(String key, Path cli, Map<String, String> environment) throws IOException {
+        Path stderr = Files.createTempFile("ng-worker", ".err");
+        ProcessBuilder builder = new ProcessBuilder("node", script().toString())
+                .directory(cli.toFile())
+                .redirectError(stderr.toFile());
+        builder.environment().putAll(environment);
+        // outlives the phase and the workspace run it was started for, which are tagged and logged through
+        // the environment of each command
+        builder.environment().remove(ProcessTreeMonitor.TAG);
+        builder.environment().remove(WorkspaceRuns.WRITE_LOG);
+        return new NodeWorker(key, builder.start(), stderr);
+    }
+
+    private static synchronized Path script() throws IOException {
+        if (script == null || !Files.isRegularFile(script)) {
+            Path copy = Files.createTempFile("ng-worker", ".js");
+            try (InputStream in = NodeWorker.class.getClassLoader().getResourceAsStream(SCRIPT)) {
+                if (in == null) {
+                    throw new FileNotFoundException(SCRIPT);
+                }
+                Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            copy.toFile().deleteOnExit();
+            script = copy;
+        }
+        return script;
+    }
+
+    /**
+     * @return The exit code of the command.
+     */
+    private int send(Path cli, Path dir, List<String> args, Map<String, String> environment, Output output) throws IOException {
+        ObjectNode request = MAPPER.createObjectNode();
+        request.put("id", ++jobs);
+        request.put("cli", cli.toAbsolutePath().toString());
+        request.put("cwd", dir.toAbsolutePath().toString());
+        args.forEach(request.putArray("args")::add);
+        ObjectNode env = request.putObject("env");
+        environment.forEach((name, value) -> {
+            if (!"NODE_OPTIONS".equals(name)) {
+                env.put(name, value);
+            }
+        });
+
+        String line;
+        try {
+            requests.write(MAPPER.writeValueAsString(request));
+            requests.write('\n');
+            requests.flush();
+            while ((line = responses.readLine()) != null && !line.startsWith(MARKER)) {
+                if (line.startsWith(OUTPUT)) {
+                    output.append(MAPPER.readValue(line.substring(OUTPUT.length()), String.class));
+                } else {
+                    // processes the CLI spawns with inherited stdio, like the one `ng update` runs the
+                    // migrations in, print straight to the worker's stdout
+                    output.append(line + "\n");
+                }
+            }
+        } catch (IOException e) {
+            line = null;
+        }
+        if (line == null) {
+            // the worker died, and whatever killed it, like running out of heap, is on its stderr
+            throw new IOException("Node worker exited:\n" + stderr());
+        }
+        JsonNode response = MAPPER.readTree(line.substring(MARKER.length()));
+        rssBytes = response.path("rss").asLong();
+        return response.path("exitCode").asInt(1);
+    }
+
+    private String stderr() {
+        try {
+            process.waitFor(5, TimeUnit.SECONDS);
+            return tail(stderr);
+        } catch (IOException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    private static String tail(Path file) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(OUTPUT_TAIL, channel.size()));
+            channel.position(channel.size() - tail.capacity());
+            while (tail.hasRemaining() && channel.read(tail) >= 0) {
+                // keep reading
+            }
+            return new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            // the worker exits once its stdin is closed
+            requests.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Files.deleteIfExists(stderr);
+        } catch (IOException ignored) {
+            // left for the OS to clean up
+        }
+        unreserve();
+    }
+
+    /**
+     * Writes what a command prints to a file, and splits it into lines for a listener.
+     */
+    private static final class Output implements Closeable {
+        private final Writer writer;
+        private final @Nullable Consumer<String> lines;
+        private final StringBuilder line = new StringBuilder();
+
+        Output(Path file, @Nullable Consumer<String> lines) throws IOException {
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            this.lines = lines;
+        }
+
+        void append(String text) throws IOException {
+            writer.write(text);
+            if (lines == null) {
+                return;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    lines.accept(line.toString());
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    line.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (lines != null && line.length() > 0) {
+                lines.accept(line.toString());
+                line.setLength(0);
+            }
+            writer.close();
+        }
+    }
+}
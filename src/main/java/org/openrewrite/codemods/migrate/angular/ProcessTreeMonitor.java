@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Finds and samples the processes of one phase while it is open, from {@code /proc}, for the
+ * {@link NodePhaseMeter} and the {@link NodeWatchdog} of the phase, which share its one scan. The
+ * processes are told apart from those of other phases running at the same time, in this JVM or
+ * another one, by a variable added to their environment, which their own children inherit.
+ * <p>
+ * The CPU time of a process includes that of the children it waited for, so a process whose parent
+ * isn't one of the phase's accounts for all of its descendants that exited, however briefly they
+ * ran. Bytes written and peak resident set size are only known of the processes a sample saw, so
+ * what a process wrote after the last sample before it exited is not counted, and a process that ran
+ * between two samples is not counted at all. Processes that weren't started with the phase's
+ * environment, like a long-lived node worker, aren't seen.
+ */
+final class ProcessTreeMonitor implements Closeable {
+    static final String TAG = "REWRITE_CODEMODS_PHASE";
+
+    private static final Path PROC = Paths.get("/proc");
+    private static final long SAMPLE_MILLIS = 200;
+
+    /**
+     * {@code USER_HZ}, which the kernel reports CPU times in. It is 100 on every architecture the JDK runs on.
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final String tag;
+    private final Thread sampler;
+
+    /**
+     * What the last sample of each process saw, by pid and start time, so that a reused pid counts as
+     * another process.
+     */
+    private final Map<String, Sample> samples = new HashMap<>();
+
+    private volatile boolean closed;
+    private List<String> pids = Collections.emptyList();
+    private long progress;
+    private long peakRssBytes;
+    private long cpuMillis;
+    private long bytesWritten;
+
+    private ProcessTreeMonitor(String tag) {
+        this.tag = tag;
+        this.sampler = new Thread(this::sample, "rewrite-codemods-process-monitor");
+        this.sampler.setDaemon(true);
+    }
+
+    /**
+     * @param environment The environment the phase's processes will be started with, which the monitor
+     *                    tags them through.
+     * @return A running monitor, or {@code null} if there is no {@code /proc} to read.
+     */
+    static @Nullable ProcessTreeMonitor start(Map<String, String> environment) {
+        if (!Files.isReadable(PROC.resolve("self").resolve("stat"))) {
+            return null;
+        }
+        ProcessTreeMonitor monitor = new ProcessTreeMonitor(UUID.randomUUID().toString());
+        environment.put(TAG, monitor.tag);
+        monitor.sampler.start();
+        return monitor;
+    }
+
+    /**
+     * @return The pids of the phase's processes that the last sample saw.
+     */
+    synchronized List<String> getProcesses() {
+        return pids;
+    }
+
+    /**
+     * @return A number that changes whenever any of the processes uses CPU or does I/O, or a process
+     * starts or exits.
+     */
+    synchronized long getProgress() {
+        return progress;
+    }
+
+    synchronized long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    synchronized long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sampleOnce();
+    }
+
+    private void sample() {
+        while (!closed) {
+            sampleOnce();
+            try {
+                Thread.sleep(SAMPLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void sampleOnce() {
+        List<String> tagged = tagged(TAG, tag);
+        Set<String> taggedPids = new HashSet<>(tagged);
+        long sampleProgress = tagged.hashCode();
+        for (String pid : tagged) {
+            Path process = PROC.resolve(pid);
+            String[] stat = stat(process);
+            if (stat == null) {
+                // exited in the meantime
+                continue;
+            }
+            Sample sample = samples.computeIfAbsent(pid + ":" + stat[19], p -> new Sample());
+            // utime and stime, the 14th and 15th fields, and cutime and cstime, those of the children it waited for
+            long ownTicks = Long.parseLong(stat[11]) + Long.parseLong(stat[12]);
+            sample.cpuTicks = ownTicks + Long.parseLong(stat[13]) + Long.parseLong(stat[14]);
+            // the parent, the 4th field
+            sample.root = !taggedPids.contains(stat[1]);
+            sampleProgress += ownTicks;
+            long[] io = io(process);
+            if (io != null) {
+                sample.bytesWritten = io[1];
+                sampleProgress += io[0] + io[1];
+            }
+            long rss = peakRssBytes(process);
+            if (rss > peakRssBytes) {
+                peakRssBytes = rss;
+            }
+        }
+        long cpuTicks = 0;
+        long bytes = 0;
+        for (Sample sample : samples.values()) {
+            if (sample.root) {
+                cpuTicks += sample.cpuTicks;
+            }
+            bytes += sample.bytesWritten;
+        }
+        pids = tagged;
+        progress = sampleProgress;
+        cpuMillis = cpuTicks * 1000 / CLOCK_TICKS_PER_SECOND;
+        bytesWritten = bytes;
+    }
+
+    /**
+     * @return The processes whose environment sets {@code variable} to {@code value}, if there is a
+     * {@code /proc} to find them in.
+     */
+    static List<String> tagged(String variable, String value) {
+        List<String> pids = new ArrayList<>();
+        byte[] entry = (variable + "=" + value + "\0").getBytes(StandardCharsets.UTF_8);
+        try (DirectoryStream<Path> all = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path process : all) {
+                try {
+                    if (contains(Files.readAllBytes(process.resolve("environ")), entry)) {
+                        pids.add(process.getFileName().toString());
+                    }
+                } catch (IOException | RuntimeException ignored) {
+                    // exited, or not ours to read
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // no /proc
+        }
+        return pids;
+    }
+
+    private static boolean contains(byte[] environ, byte[] entry) {
+        next:
+        for (int i = 0; i + entry.length <= environ.length; i++) {
+            if (i > 0 && environ[i - 1] != 0) {
+                continue;
+            }
+            for (int j = 0; j < entry.length; j++) {
+                if (environ[i + j] != entry[j]) {
+                    continue next;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static long peakRssBytes(Path process) {
+        try {
+            for (String line : Files.readAllLines(process.resolve("status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // the process exited in the meantime
+        }
+        return 0;
+    }
+
+    /**
+     * @return The bytes read and written by the process, or {@code null} if it exited in the meantime.
+     */
+    private static long @Nullable [] io(Path process) {
+        try {
+            long[] io = new long[2];
+            for (String line : Files.readAllLines(process.resolve("io"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("rchar:")) {
+                    io[0] = Long.parseLong(line.substring(6).trim());
+                } else if (line.startsWith("wchar:")) {
+                    io[1] = Long.parseLong(line.substring(6).trim());
+                }
+            }
+            return io;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The fields of {@code /proc/[pid]/stat} following the command name, which may itself
+     * contain spaces, so that the state is at index 0 and the start time at index 19.
+     */
+    private static String @Nullable [] stat(Path process) {
+        try {
+            String stat = new String(Files.readAllBytes(process.resolve("stat")), StandardCharsets.UTF_8);
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+            return fields.length > 19 ? fields : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class Sample {
+        long cpuTicks;
+        long bytesWritten;
+
+        /**
+         * Whether the parent of the process isn't one of the phase's, so that its CPU time isn't already
+         * counted by the parent once it exits.
+         */
+        boolean root;
+    }
+}
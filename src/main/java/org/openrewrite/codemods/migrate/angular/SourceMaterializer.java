@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.openrewrite.SourceFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prints and writes source files on a bounded pool of worker threads, so the scanner only has
+ * to hand them over. Small files are grouped into batches to keep the per-task overhead low, and
+ * the number of batches in flight is capped so that a scanner running ahead of the disk blocks
+ * rather than queueing up the whole repository.
+ */
+class SourceMaterializer {
+    private static final int BATCH_FILES = 64;
+    private static final long BATCH_BYTES = 1024 * 1024;
+    private static final long UNKNOWN_SIZE = 4096;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Writer writer;
+    private final ExecutorService pool;
+    private final Semaphore inFlight;
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private List<SourceFile> batch = new ArrayList<>();
+    private long batchBytes;
+
+    SourceMaterializer(Writer writer) {
+        this.writer = writer;
+        int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "rewrite-codemods-materializer-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inFlight = new Semaphore(threads * 4);
+    }
+
+    synchronized void submit(SourceFile sourceFile) {
+        batch.add(sourceFile);
+        batchBytes += sourceFile.getFileAttributes() == null ? UNKNOWN_SIZE : sourceFile.getFileAttributes().getSize();
+        if (batch.size() >= BATCH_FILES || batchBytes >= BATCH_BYTES) {
+            flush();
+        }
+    }
+
+    /**
+     * Create the parent directory of {@code path}, at most once per directory across all workers.
+     */
+    void createParentDirectories(Path path) throws IOException {
+        Path parent = path.getParent();
+        if (parent != null && !createdDirectories.contains(parent)) {
+            Files.createDirectories(parent);
+            createdDirectories.add(parent);
+        }
+    }
+
+    /**
+     * Wait for every submitted file to be written, rethrowing the first failure if any.
+     */
+    synchronized void await() {
+        flush();
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing source files", e);
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw new UncheckedIOException((IOException) t);
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t != null) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<SourceFile> submitted = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+
+        inFlight.acquireUninterruptibly();
+        try {
+            pool.execute(() -> {
+                try {
+                    for (SourceFile sourceFile : submitted) {
+                        if (failure.get() != null) {
+                            return;
+                        }
+                        writer.write(sourceFile);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    interface Writer {
+        void write(SourceFile sourceFile) throws IOException;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code node-gyp} and CLI toolchains of a run, provisioned side by side in the background while
+ * the source files are still being scanned. A toolchain whose background install fails is reported
+ * as missing, so that the run can install it the usual way once the working tree is in place.
+ */
+final class ToolchainInstalls {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * Two threads, so that the two toolchains of a run install concurrently, while the runs of a chain
+     * of recipes, which all start theirs during the scan, queue up rather than all hitting the registry
+     * at once.
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "rewrite-codemods-toolchain-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CompletableFuture<Path> nodeGyp;
+    private final CompletableFuture<Path> cli;
+
+    private ToolchainInstalls(CompletableFuture<Path> nodeGyp, CompletableFuture<Path> cli) {
+        this.nodeGyp = nodeGyp;
+        this.cli = cli;
+    }
+
+    /**
+     * @param nodeGypCompanions The packages installed alongside {@code node-gyp}.
+     * @param done              Called once both installs have completed, successfully or not.
+     */
+    static ToolchainInstalls start(NodeToolchains toolchains,
+                                   String nodeGypPackage, List<String> nodeGypCompanions,
+                                   NodeToolchains.Installer nodeGypInstaller,
+                                   String cliPackage, NodeToolchains.Installer cliInstaller,
+                                   Runnable done) {
+        CompletableFuture<Path> nodeGyp = CompletableFuture.supplyAsync(() -> toolchains.provision(nodeGypPackage, nodeGypCompanions, nodeGypInstaller), POOL);
+        CompletableFuture<Path> cli = CompletableFuture.supplyAsync(() -> toolchains.provision(cliPackage, cliInstaller), POOL);
+        CompletableFuture.allOf(nodeGyp, cli).whenComplete((r, t) -> done.run());
+        return new ToolchainInstalls(nodeGyp, cli);
+    }
+
+    /**
+     * @return The {@code node-gyp} toolchain, waiting for it if necessary, or {@code null} if its install failed.
+     */
+    @Nullable
+    Path nodeGyp() {
+        return join(nodeGyp);
+    }
+
+    /**
+     * @return The CLI toolchain, waiting for it if necessary, or {@code null} if its install failed.
+     */
+    @Nullable
+    Path cli() {
+        return join(cli);
+    }
+
+    private static @Nullable Path join(CompletableFuture<Path> install) {
+        try {
+            return install.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Runs node in each Angular workspace of a repository. Workspaces run concurrently, except that a
+ * workspace nested in another runs after it, since an update of the outer workspace may rewrite the
+ * inner one's files. Files outside every workspace, like a {@code tsconfig.base.json} or a library
+ * shared by several workspaces, are compared before and after each run, so that a file changed by
+ * runs which overlapped in time is reported as a conflict: only the last write survives. They are
+ * hashed once, and after that only those that a {@link ChangeJournal} saw change are hashed again.
+ * <p>
+ * A file that changed while runs overlapped could have been changed by any of them, so each run
+ * has its node processes record which files they write, through the script preloaded by
+ * {@link BlobStore#nodeOptions}, and a change counts only for the runs that recorded the file.
+ */
+final class WorkspaceRuns {
+    /**
+     * The environment variable naming the file that the preloaded script records the files a run's
+     * node processes write in.
+     */
+    static final String WRITE_LOG = "REWRITE_CODEMODS_WRITE_LOG";
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Path repoDir;
+
+    /**
+     * {@link #repoDir} with symbolic links resolved, like node resolves the paths it records.
+     */
+    private final Path realRepoDir;
+
+    private final List<List<Path>> groups;
+    private final List<Path> sharedFiles;
+    private final Map<Path, List<Change>> changes = new HashMap<>();
+
+    /**
+     * The index of each shared file in {@link #sharedFiles}, by its path in the working tree.
+     */
+    private final Map<Path, Integer> sharedFileIds = new HashMap<>();
+
+    /**
+     * The hashes of the shared files, as of the last time they were looked at.
+     */
+    private long @Nullable [] sharedFileHashes;
+
+    private @Nullable ChangeJournal journal;
+
+    /**
+     * @param angularJsonPaths The {@code angular.json} of each workspace to run, relative to {@code repoDir}.
+     * @param files            Every file of the working tree, relative to {@code repoDir}.
+     */
+    WorkspaceRuns(Path repoDir, Collection<Path> angularJsonPaths, Collection<Path> files) {
+        this.repoDir = repoDir;
+        this.realRepoDir = realPath(repoDir);
+        this.groups = groups(angularJsonPaths);
+        this.sharedFiles = new ArrayList<>();
+        if (groups.size() > 1) {
+            for (Path file : files) {
+                if (!inAny(file)) {
+                    sharedFileIds.put(repoDir.resolve(file).toAbsolutePath().normalize(), sharedFiles.size());
+                    sharedFiles.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The workspaces grouped by the outermost workspace containing them, each group ordered
+     * from the outside in.
+     */
+    static List<List<Path>> groups(Collection<Path> angularJsonPaths) {
+        List<Path> sorted = new ArrayList<>(angularJsonPaths);
+        sorted.sort(Comparator.comparingInt(Path::getNameCount).thenComparing(Comparator.naturalOrder()));
+        List<List<Path>> groups = new ArrayList<>();
+        next:
+        for (Path angularJsonPath : sorted) {
+            for (List<Path> group : groups) {
+                if (contains(directoryOf(group.get(0)), angularJsonPath)) {
+                    group.add(angularJsonPath);
+                    continue next;
+                }
+            }
+            groups.add(new ArrayList<>(Collections.singletonList(angularJsonPath)));
+        }
+        return groups;
+    }
+
+    /**
+     * Run every workspace, at most {@code concurrency} at a time, and wait for them all.
+     *
+     * @return The output of each run, by the {@code angular.json} of its workspace, in the order the
+     * workspaces were given.
+     */
+    Map<Path, Path> run(int concurrency, Run run) {
+        Map<Path, Path> outputs = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        if (!sharedFiles.isEmpty()) {
+            Set<Path> dirs = new HashSet<>();
+            for (Path file : sharedFileIds.keySet()) {
+                dirs.add(file.getParent());
+            }
+            synchronized (this) {
+                journal = ChangeJournal.watch(dirs);
+            }
+        }
+        try {
+            runGroups(concurrency, run, outputs, failure);
+        } finally {
+            synchronized (this) {
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+            }
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw new UncheckedIOException((IOException) t);
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t != null) {
+            throw new IllegalStateException(t);
+        }
+
+        Map<Path, Path> ordered = new LinkedHashMap<>();
+        for (List<Path> group : groups) {
+            for (Path angularJsonPath : group) {
+                ordered.put(angularJsonPath, outputs.get(angularJsonPath));
+            }
+        }
+        return ordered;
+    }
+
+    private void runGroups(int concurrency, Run run, Map<Path, Path> outputs, AtomicReference<Throwable> failure) {
+        if (groups.size() == 1) {
+            runGroup(groups.get(0), run, outputs, failure);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, groups.size())), r -> {
+                Thread thread = new Thread(r, "rewrite-codemods-workspace-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                for (List<Path> group : groups) {
+                    pool.execute(() -> runGroup(group, run, outputs, failure));
+                }
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while running workspaces", e);
+            }
+        }
+    }
+
+    /**
+     * @return The shared files that more than one workspace changed while running at the same time.
+     */
+    List<Conflict> conflicts() {
+        List<Conflict> conflicts = new ArrayList<>();
+        synchronized (changes) {
+            for (Map.Entry<Path, List<Change>> entry : changes.entrySet()) {
+                Set<Path> workspaces = new TreeSet<>();
+                List<Change> fileChanges = entry.getValue();
+                for (int i = 0; i < fileChanges.size(); i++) {
+                    for (int j = i + 1; j < fileChanges.size(); j++) {
+                        Change a = fileChanges.get(i);
+                        Change b = fileChanges.get(j);
+                        if (!a.workspace.equals(b.workspace) && a.start < b.end && b.start < a.end) {
+                            workspaces.add(a.workspace);
+                            workspaces.add(b.workspace);
+                        }
+                    }
+                }
+                if (!workspaces.isEmpty()) {
+                    conflicts.add(new Conflict(entry.getKey(), new ArrayList<>(workspaces)));
+                }
+            }
+        }
+        conflicts.sort(Comparator.comparing(Conflict::getPath));
+        return conflicts;
+    }
+
+    private void runGroup(List<Path> group, Run run, Map<Path, Path> outputs, AtomicReference<Throwable> failure) {
+        for (Path angularJsonPath : group) {
+            if (failure.get() != null) {
+                return;
+            }
+            Path writeLog = null;
+            try {
+                if (sharedFiles.isEmpty()) {
+                    outputs.put(angularJsonPath, run.run(angularJsonPath, Collections.emptyMap()));
+                    continue;
+                }
+                writeLog = Files.createTempFile("workspace-writes", ".log");
+                long[] before = hashSharedFiles();
+                long start = System.nanoTime();
+                outputs.put(angularJsonPath, run.run(angularJsonPath,
+                        Collections.singletonMap(WRITE_LOG, writeLog.toString())));
+                long end = System.nanoTime();
+                long[] after = hashSharedFiles();
+                List<Path> written = written(writeLog);
+                synchronized (changes) {
+                    for (int i = 0; i < before.length; i++) {
+                        // the file may have been changed by another run that overlapped with this one
+                        if (before[i] != after[i] && isWritten(sharedFiles.get(i), written)) {
+                            changes.computeIfAbsent(sharedFiles.get(i), f -> new ArrayList<>())
+                                    .add(new Change(angularJsonPath, start, end));
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                if (writeLog != null) {
+                    try {
+                        Files.deleteIfExists(writeLog);
+                    } catch (IOException ignored) {
+                        // left for the OS to clean up
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The files and directories a run recorded changing, moving or deleting.
+     */
+    private static List<Path> written(Path writeLog) throws IOException {
+        List<Path> written = new ArrayList<>();
+        for (String line : Files.readAllLines(writeLog)) {
+            if (!line.isEmpty()) {
+                written.add(Paths.get(line).toAbsolutePath().normalize());
+            }
+        }
+        return written;
+    }
+
+    private boolean isWritten(Path sharedFile, List<Path> written) {
+        Path path = repoDir.resolve(sharedFile).toAbsolutePath().normalize();
+        Path realPath = realRepoDir.resolve(sharedFile);
+        for (Path w : written) {
+            // a directory that was removed or moved as a whole takes its files with it
+            if (path.startsWith(w) || realPath.startsWith(w)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path realPath(Path dir) {
+        try {
+            return dir.toRealPath();
+        } catch (IOException e) {
+            return dir.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * @return The hashes of the shared files as they are now, hashing again only the files that changed
+     * since they were last hashed, if a journal is watching them.
+     */
+    private synchronized long[] hashSharedFiles() throws IOException {
+        if (sharedFileHashes == null) {
+            sharedFileHashes = hashAll();
+        } else if (journal != null) {
+            Set<Path> changed = journal.changed();
+            if (changed == null) {
+                // events were lost, so the journal can't be relied on any more
+                journal.close();
+                journal = null;
+                sharedFileHashes = hashAll();
+            } else {
+                for (Path path : changed) {
+                    Integer id = sharedFileIds.get(path);
+                    if (id != null) {
+                        sharedFileHashes[id] = hash(id);
+                    }
+                }
+            }
+        } else {
+            sharedFileHashes = hashAll();
+        }
+        return sharedFileHashes.clone();
+    }
+
+    private long[] hashAll() throws IOException {
+        long[] hashes = new long[sharedFiles.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(i);
+        }
+        return hashes;
+    }
+
+    private long hash(int id) throws IOException {
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(repoDir.resolve(sharedFiles.get(id))));
+            return crc.getValue();
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    private boolean inAny(Path file) {
+        for (List<Path> group : groups) {
+            if (contains(directoryOf(group.get(0)), file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path directoryOf(Path angularJsonPath) {
+        Path parent = angularJsonPath.getParent();
+        return parent == null ? Paths.get("") : parent;
+    }
+
+    private static boolean contains(Path directory, Path path) {
+        return directory.toString().isEmpty() || path.startsWith(directory);
+    }
+
+    @FunctionalInterface
+    interface Run {
+        /**
+         * @param environment Variables to add to the environment of the run's node processes, which must
+         *                    preload the script of {@link BlobStore#nodeOptions} for the files they write
+         *                    to be attributed to the run.
+         * @return The output of the run.
+         */
+        Path run(Path angularJsonPath, Map<String, String> environment) throws IOException;
+    }
+
+    @Value
+    static class Conflict {
+        Path path;
+        List<Path> workspaces;
+    }
+
+    @Value
+    private static class Change {
+        Path workspace;
+        long start;
+        long end;
+    }
+}
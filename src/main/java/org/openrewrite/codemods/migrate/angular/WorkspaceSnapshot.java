@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The files of a workspace as they were before node ran in it, other than its {@code node_modules},
+ * so that a run which failed part way can start over from the same tree. The snapshot links the
+ * files rather than copying them, so node must run with the script of {@link BlobStore#nodeOptions}
+ * preloaded, which replaces a linked file by a copy of its own before writing to it.
+ */
+final class WorkspaceSnapshot implements Closeable {
+    private static final String NODE_MODULES = "node_modules";
+
+    private final Path workspace;
+    private final Path snapshot;
+
+    private WorkspaceSnapshot(Path workspace, Path snapshot) {
+        this.workspace = workspace;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @param snapshot An empty directory on the same file system as the workspace, which the snapshot
+     *                 is deleted with on {@link #close()}.
+     */
+    static WorkspaceSnapshot take(Path workspace, Path snapshot) throws IOException {
+        Files.walkFileTree(workspace, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.getFileName() != null && NODE_MODULES.equals(dir.getFileName().toString()) && !dir.equals(workspace)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(snapshot.resolve(workspace.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path to = snapshot.resolve(workspace.relativize(file).toString());
+                if (attrs.isSymbolicLink()) {
+                    Files.createSymbolicLink(to, Files.readSymbolicLink(file));
+                } else {
+                    linkOrCopy(file, to);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new WorkspaceSnapshot(workspace, snapshot);
+    }
+
+    /**
+     * Put back the files node changed or deleted, and delete the ones it created, leaving
+     * {@code node_modules} as it is.
+     */
+    void restore() throws IOException {
+        Files.walkFileTree(workspace, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName() != null && NODE_MODULES.equals(dir.getFileName().toString()) && !dir.equals(workspace) ?
+                        FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path original = snapshot.resolve(workspace.relativize(file).toString());
+                if (!Files.exists(original, LinkOption.NOFOLLOW_LINKS) || Files.isDirectory(original, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (!Files.isDirectory(snapshot.resolve(workspace.relativize(dir).toString()))) {
+                    FileTrees.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Files.walkFileTree(snapshot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(workspace.resolve(snapshot.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path to = workspace.resolve(snapshot.relativize(file).toString());
+                if (attrs.isSymbolicLink()) {
+                    if (!Files.isSymbolicLink(to) || !Files.readSymbolicLink(to).equals(Files.readSymbolicLink(file))) {
+                        Files.deleteIfExists(to);
+                        Files.createSymbolicLink(to, Files.readSymbolicLink(file));
+                    }
+                } else if (!Files.exists(to, LinkOption.NOFOLLOW_LINKS) || !Files.isSameFile(file, to)) {
+                    // changed, replaced or deleted by node
+                    if (Files.isDirectory(to, LinkOption.NOFOLLOW_LINKS)) {
+                        FileTrees.delete(to);
+                    } else {
+                        Files.deleteIfExists(to);
+                    }
+                    linkOrCopy(file, to);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            FileTrees.delete(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void linkOrCopy(Path file, Path to) throws IOException {
+        try {
+            Files.createLink(to, file);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(file, to, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular.table;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.Recipe;
+
+public class AngularUpdateResults extends DataTable<AngularUpdateResults.Row> {
+
+    public AngularUpdateResults(Recipe recipe) {
+        super(recipe,
+                "Angular update results",
+                "The packages `ng update` updated, the migrations it ran, and the warnings and errors it reported.");
+    }
+
+    @Value
+    public static class Row {
+        @Column(displayName = "Workspace",
+                description = "The path to the `angular.json` of the workspace.")
+        String workspace;
+
+        @Column(displayName = "Kind",
+                description = "One of `PACKAGE`, `MIGRATION`, `WARNING` or `ERROR`.")
+        String kind;
+
+        @Column(displayName = "Package",
+                description = "The package that was updated, or whose migrations were running.")
+        @Nullable
+        String packageName;
+
+        @Column(displayName = "Description",
+                description = "The old and new version of an updated package, the description of a migration, or the message of a warning or error.")
+        String description;
+
+        @Column(displayName = "Outcome",
+                description = "How a migration ended, such as the number of files it modified, or why it failed.")
+        @Nullable
+        String outcome;
+
+        @Column(displayName = "Duration (ms)",
+                description = "How long a migration took, when the output was read while `ng update` ran.")
+        @Nullable
+        Long durationMillis;
+    }
+}
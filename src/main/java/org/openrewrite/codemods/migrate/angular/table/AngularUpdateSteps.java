@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular.table;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.Recipe;
+
+public class AngularUpdateSteps extends DataTable<AngularUpdateSteps.Row> {
+
+    public AngularUpdateSteps(Recipe recipe) {
+        super(recipe,
+                "Angular update steps",
+                "Whether each `ng update` step ran or was skipped because the workspace was already on that version.");
+    }
+
+    @Value
+    public static class Row {
+        @Column(displayName = "Workspace",
+                description = "The path to the `angular.json` of the workspace.")
+        String workspace;
+
+        @Column(displayName = "Target version",
+                description = "The Angular version this step updates to.")
+        @Nullable
+        String targetVersion;
+
+        @Column(displayName = "Installed version",
+                description = "The `@angular/core` version declared in the workspace's `package.json` before the run.")
+        @Nullable
+        String installedVersion;
+
+        @Column(displayName = "Skipped",
+                description = "Whether `ng update` was skipped for this step.")
+        boolean skipped;
+    }
+}
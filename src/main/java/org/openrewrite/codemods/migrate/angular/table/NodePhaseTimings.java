@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular.table;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.Recipe;
+
+public class NodePhaseTimings extends DataTable<NodePhaseTimings.Row> {
+
+    public NodePhaseTimings(Recipe recipe) {
+        super(recipe,
+                "Node phase timings",
+                "How long each phase of running a node-based codemod took, and what its child processes used.");
+    }
+
+    @Value
+    public static class Row {
+        @Column(displayName = "Recipe",
+                description = "The name of the recipe that ran the phase.")
+        String recipe;
+
+        @Column(displayName = "Workspace",
+                description = "The path to the `angular.json` of the workspace.")
+        @Nullable
+        String workspace;
+
+        @Column(displayName = "Phase",
+                description = "The phase of the run, such as installing the project's dependencies or running the codemod.")
+        String phase;
+
+        @Column(displayName = "Duration (ms)",
+                description = "The wall-clock time of the phase.")
+        long durationMillis;
+
+        @Column(displayName = "Child CPU time (ms)",
+                description = "User and system CPU time of the processes the phase ran, including the children " +
+                              "they waited for. Only known on Linux, with process metrics on.")
+        @Nullable
+        Long childCpuMillis;
+
+        @Column(displayName = "Child peak RSS (bytes)",
+                description = "The largest peak resident set size of any single child process of the phase that a sample saw. " +
+                              "Only known on Linux, with process metrics on.")
+        @Nullable
+        Long childPeakRssBytes;
+
+        @Column(displayName = "Bytes written",
+                description = "The bytes the phase, or the processes it ran, wrote during the phase.")
+        @Nullable
+        Long bytesWritten;
+
+        @Column(displayName = "Files",
+                description = "The number of files the phase wrote, copied or found changed.")
+        @Nullable
+        Long files;
+
+        @Column(displayName = "Skipped files",
+                description = "The number of source files the materialization policy kept from the working tree, " +
+                              "whose changes by node are lost.")
+        @Nullable
+        Long skippedFiles;
+
+        @Column(displayName = "Skipped bytes",
+                description = "The size of the source files the materialization policy kept from the working tree.")
+        @Nullable
+        Long skippedBytes;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular.table;
+
+import lombok.Value;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.Recipe;
+
+public class WorkspaceConflicts extends DataTable<WorkspaceConflicts.Row> {
+
+    public WorkspaceConflicts(Recipe recipe) {
+        super(recipe,
+                "Workspace conflicts",
+                "Files outside any Angular workspace that several workspaces changed while being updated at the same time. Only the last change to such a file is kept.");
+    }
+
+    @Value
+    public static class Row {
+        @Column(displayName = "Source path",
+                description = "The path to the file that was changed concurrently.")
+        String sourcePath;
+
+        @Column(displayName = "Workspaces",
+                description = "The paths to the `angular.json` of the workspaces that changed the file, separated by commas.")
+        String workspaces;
+    }
+}
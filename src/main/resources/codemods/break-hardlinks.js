@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+'use strict';
+
+// Preloaded into the node processes of a NodeBasedRecipe whose working tree is hardlinked from a blob
+// store shared with other trees. Before a file with more than one link is changed in place, it is
+// replaced by a copy of its own, so that the change doesn't show through the other links.
+//
+// If REWRITE_CODEMODS_WRITE_LOG names a file, the path of every file the process changes, moves or
+// deletes is appended to it, one per line, so that WorkspaceRuns can tell which of the workspaces
+// running at the same time changed a file they share. The variable is read on each change, since a
+// node worker runs the commands of different workspaces with different logs.
+
+const fs = require('fs');
+const path = require('path');
+const {syncBuiltinESMExports} = require('module');
+const {fileURLToPath} = require('url');
+
+const lstatSync = fs.lstatSync;
+const copyFileSync = fs.copyFileSync;
+const renameSync = fs.renameSync;
+const unlinkSync = fs.unlinkSync;
+const appendFileSync = fs.appendFileSync;
+const {O_WRONLY, O_RDWR, O_APPEND, O_TRUNC} = fs.constants;
+
+const WRITE_LOG = 'REWRITE_CODEMODS_WRITE_LOG';
+
+let copies = 0;
+const recorded = new Set();
+
+// null for a file descriptor or handle, opened through a function that already saw the path
+function pathOf(file) {
+    if (file instanceof URL) {
+        return fileURLToPath(file);
+    } else if (Buffer.isBuffer(file)) {
+        return file.toString();
+    }
+    return typeof file === 'string' ? file : null;
+}
+
+let recording = false;
+
+function record(file) {
+    const log = process.env[WRITE_LOG];
+    // appending to the log goes through the patched functions too
+    if (!log || file === null || recording) {
+        return;
+    }
+    const line = path.resolve(file) + '\n';
+    if (!recorded.has(log + '\0' + line)) {
+        recorded.add(log + '\0' + line);
+        recording = true;
+        try {
+            appendFileSync(log, line);
+        } finally {
+            recording = false;
+        }
+    }
+}
+
+function breakLink(file) {
+    file = pathOf(file);
+    record(file);
+    if (file === null) {
+        return;
+    }
+    let stats;
+    try {
+        stats = lstatSync(file);
+    } catch (e) {
+        // nothing there yet
+        return;
+    }
+    if (!stats.isFile() || stats.nlink < 2) {
+        return;
+    }
+    const copy = path.join(path.dirname(file), `.${path.basename(file)}.${process.pid}.${copies++}.unlinked`);
+    try {
+        copyFileSync(file, copy);
+        renameSync(copy, file);
+    } catch (e) {
+        try {
+            unlinkSync(copy);
+        } catch (ignored) {
+            // never created
+        }
+        throw e;
+    }
+}
+
+function writes(flags) {
+    if (flags === undefined || flags === null) {
+        return false;
+    }
+    if (typeof flags === 'number') {
+        return (flags & (O_WRONLY | O_RDWR | O_APPEND | O_TRUNC)) !== 0;
+    }
+    return /[wa+]/.test(String(flags));
+}
+
+function flagsOf(options, defaultFlags) {
+    if (options && typeof options === 'object' && options.flag !== undefined) {
+        return options.flag;
+    }
+    return defaultFlags;
+}
+
+// (path, ...) for functions that always change the file
+function always(target, name) {
+    const original = target[name];
+    if (typeof original !== 'function') {
+        return;
+    }
+    target[name] = function (file, ...args) {
+        breakLink(file);
+        return original.call(this, file, ...args);
+    };
+}
+
+// (path, data, options) for functions that write with a flag option, 'w' or 'a' by default
+function withFlagOption(target, name, defaultFlags) {
+    const original = target[name];
+    target[name] = function (file, data, options, ...args) {
+        if (writes(flagsOf(options, defaultFlags))) {
+            breakLink(file);
+        }
+        return original.call(this, file, data, options, ...args);
+    };
+}
+
+// (path, flags, ...) for functions that open a file
+function opening(target, name) {
+    const original = target[name];
+    target[name] = function (file, flags, ...args) {
+        if (writes(flags)) {
+            breakLink(file);
+        }
+        return original.call(this, file, flags, ...args);
+    };
+}
+
+// (src, dest, ...) for functions that overwrite their destination
+function destination(target, name) {
+    const original = target[name];
+    target[name] = function (src, dest, ...args) {
+        breakLink(dest);
+        return original.call(this, src, dest, ...args);
+    };
+}
+
+// (path, ...) or (src, dest, ...) for functions that remove or replace a file without writing to
+// it, which only has to be recorded
+function removing(target, name, paths) {
+    const original = target[name];
+    if (typeof original !== 'function') {
+        return;
+    }
+    target[name] = function (...args) {
+        for (let i = 0; i < paths; i++) {
+            record(pathOf(args[i]));
+        }
+        return original.call(this, ...args);
+    };
+}
+
+for (const api of [fs, fs.promises]) {
+    const sync = api === fs;
+    withFlagOption(api, 'writeFile', 'w');
+    withFlagOption(api, 'appendFile', 'a');
+    opening(api, 'open');
+    destination(api, 'copyFile');
+    for (const name of ['truncate', 'chmod', 'chown', 'utimes']) {
+        always(api, name);
+    }
+    removing(api, 'rename', 2);
+    removing(api, 'unlink', 1);
+    removing(api, 'rm', 1);
+    if (sync) {
+        withFlagOption(fs, 'writeFileSync', 'w');
+        withFlagOption(fs, 'appendFileSync', 'a');
+        opening(fs, 'openSync');
+        destination(fs, 'copyFileSync');
+        for (const name of ['truncateSync', 'chmodSync', 'chownSync', 'utimesSync']) {
+            always(fs, name);
+        }
+        removing(fs, 'renameSync', 2);
+        removing(fs, 'unlinkSync', 1);
+        removing(fs, 'rmSync', 1);
+    }
+}
+
+const createWriteStream = fs.createWriteStream;
+fs.createWriteStream = function (file, options) {
+    const flags = options && typeof options === 'object' && options.flags !== undefined ? options.flags : 'w';
+    if (writes(flags)) {
+        breakLink(file);
+    }
+    return createWriteStream.call(this, file, options);
+};
+
+// modules that import named exports of 'fs' get the patched functions too
+syncBuiltinESMExports();
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+'use strict';
+
+// Runs Angular CLI commands for NodeBasedRecipe in a long-lived process, so that the CLI and the
+// devkit are loaded once rather than once per repository. Each line on stdin is a request
+//   {"id": 1, "cli": "/path/to/@angular/cli", "cwd": "/path/to/workspace", "args": ["update", ...], "env": {...}}
+// Requests run one at a time. What the CLI prints is forwarded to stdout as it is printed, one line per write
+//   #ng-worker-output# "Fetching dependency metadata from registry...\n"
+// and the request is answered by one line on stdout
+//   #ng-worker# {"id": 1, "exitCode": 0, "rss": 123456789}
+// What child processes of the CLI with inherited stdio print ends up on stdout as is, without a marker.
+
+const path = require('path');
+const readline = require('readline');
+const {pathToFileURL} = require('url');
+
+const stdoutWrite = process.stdout.write.bind(process.stdout);
+const stderrWrite = process.stderr.write.bind(process.stderr);
+const exit = process.exit.bind(process);
+
+class ExitRequested extends Error {
+    constructor(code) {
+        super(`process.exit(${code})`);
+        this.code = code;
+    }
+}
+
+const MARKER = '#ng-worker# ';
+const OUTPUT = '#ng-worker-output# ';
+
+function respond(response) {
+    stdoutWrite(MARKER + JSON.stringify(response) + '\n');
+}
+
+function print(text) {
+    stdoutWrite(OUTPUT + JSON.stringify(text) + '\n');
+}
+
+async function run(request) {
+    const capture = (chunk, encoding, callback) => {
+        print(typeof chunk === 'string' ? chunk : Buffer.from(chunk).toString());
+        const done = typeof encoding === 'function' ? encoding : callback;
+        if (typeof done === 'function') {
+            done();
+        }
+        return true;
+    };
+
+    const cwd = process.cwd();
+    const env = Object.assign({}, process.env);
+    process.stdout.write = capture;
+    process.stderr.write = capture;
+    process.exit = (code) => {
+        throw new ExitRequested(code === undefined ? process.exitCode : code);
+    };
+    Object.assign(process.env, request.env || {});
+    process.exitCode = undefined;
+
+    let exitCode;
+    try {
+        process.chdir(request.cwd);
+        exitCode = await (await entryPoint(request.cli))({cliArgs: request.args});
+    } catch (e) {
+        if (e instanceof ExitRequested) {
+            exitCode = e.code;
+        } else {
+            print(String((e && e.stack) || e) + '\n');
+            exitCode = 1;
+        }
+    } finally {
+        process.stdout.write = stdoutWrite;
+        process.stderr.write = stderrWrite;
+        process.exit = exit;
+        for (const key of Object.keys(process.env)) {
+            if (!(key in env)) {
+                delete process.env[key];
+            }
+        }
+        Object.assign(process.env, env);
+        process.chdir(cwd);
+        forget(request.cwd);
+    }
+
+    if (exitCode === undefined || exitCode === null) {
+        exitCode = process.exitCode || 0;
+    }
+    process.exitCode = undefined;
+    return {exitCode, rss: process.memoryUsage().rss};
+}
+
+// The CLI's lib/cli/index.js is CommonJS with `exports.default = fn`, which import() wraps so that
+// the function is default.default. An ES module CLI has it as default.
+async function entryPoint(cli) {
+    const module = await import(pathToFileURL(path.join(cli, 'lib', 'cli', 'index.js')).href);
+    const entry = typeof module.default === 'function' ? module.default : module.default && module.default.default;
+    if (typeof entry !== 'function') {
+        throw new Error(`${cli} has no CLI entry point in lib/cli/index.js`);
+    }
+    return entry;
+}
+
+// The schematics of a workspace are loaded from its own node_modules, which the next request with
+// the same working directory may have reinstalled in a different version.
+function forget(dir) {
+    const prefix = path.resolve(dir) + path.sep;
+    for (const id of Object.keys(require.cache)) {
+        if (id.startsWith(prefix)) {
+            delete require.cache[id];
+        }
+    }
+}
+
+let queue = Promise.resolve();
+const lines = readline.createInterface({input: process.stdin});
+lines.on('line', line => {
+    queue = queue.then(async () => {
+        const request = JSON.parse(line);
+        respond(Object.assign({id: request.id}, await run(request)));
+    }).catch(e => {
+        stderrWrite(String((e && e.stack) || e) + '\n');
+        exit(1);
+    });
+});
+lines.on('close', () => queue.then(() => exit(0)));
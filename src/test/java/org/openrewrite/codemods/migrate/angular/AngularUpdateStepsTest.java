@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Tree;
+import org.openrewrite.codemods.migrate.angular.table.AngularUpdateSteps;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.test.RewriteTest;
+import org.openrewrite.text.PlainText;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.openrewrite.test.SourceSpecs.text;
+
+/**
+ * Which {@code ng update} steps {@link ApplyAngularCLI} runs. Only the steps it skips run here, as
+ * the others need node.
+ */
+public class AngularUpdateStepsTest implements RewriteTest {
+
+    @TempDir
+    Path repo;
+
+    @Test
+    void skipsWorkspacesAlreadyOnTheTargetMajor() {
+        rewriteRun(
+          spec -> spec.recipe(new ApplyAngularCLI("17"))
+            .dataTable(AngularUpdateSteps.Row.class, rows -> assertThat(rows).containsExactlyInAnyOrder(
+              new AngularUpdateSteps.Row("angular.json", "17", "^17.3.0", true),
+              new AngularUpdateSteps.Row("legacy/angular.json", "17", "~18.0.1", true))),
+          text("{\"version\": 1}", spec -> spec.path("angular.json")),
+          text("{\"dependencies\": {\"@angular/core\": \"^17.3.0\"}}", spec -> spec.path("package.json")),
+          text("{\"version\": 1}", spec -> spec.path("legacy/angular.json")),
+          text("{\"devDependencies\": {\"@angular/core\": \"~18.0.1\"}}", spec -> spec.path("legacy/package.json"))
+        );
+    }
+
+    @Test
+    void skipsWhenInstalledMajorIsAtLeastTarget() {
+        assertThat(mayRun("17", "^17.3.0")).isFalse();
+        assertThat(mayRun("17", "18.0.0")).isFalse();
+    }
+
+    @Test
+    void runsWhenInstalledMajorIsLower() {
+        assertThat(mayRun("17", "^16.2.0")).isTrue();
+    }
+
+    @Test
+    void runsWhenEitherVersionDoesNotParse() {
+        assertThat(mayRun("17", "latest")).isTrue();
+        assertThat(mayRun("17", "*")).isTrue();
+        assertThat(mayRun("latest", "^17.3.0")).isTrue();
+        assertThat(mayRun(null, "^17.3.0")).isTrue();
+    }
+
+    @Test
+    void runsWhenNothingDeclaresAngularCore() {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(repo, MaterializationPolicy.angular());
+        assertThat(new ApplyAngularCLI("17").mayRun(acc, Paths.get(""), new InMemoryExecutionContext())).isTrue();
+    }
+
+    private boolean mayRun(String target, String installed) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(repo, MaterializationPolicy.angular());
+        acc.readPackageJson(new PlainText(Tree.randomId(), Paths.get("package.json"), Markers.EMPTY, null, false,
+          null, null, "{\"dependencies\": {\"@angular/core\": \"" + installed + "\"}}", emptyList()));
+        return new ApplyAngularCLI(target).mayRun(acc, Paths.get(""), new InMemoryExecutionContext());
+    }
+}
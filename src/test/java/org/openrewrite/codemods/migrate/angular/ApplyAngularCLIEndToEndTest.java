@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.Result;
+import org.openrewrite.SourceFile;
+import org.openrewrite.Tree;
+import org.openrewrite.internal.InMemoryLargeSourceSet;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.text.PlainText;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Updates the sample workspace in {@code src/test/resources/e2e/workspace} from Angular 16 to 17 with
+ * packages from a {@link LocalNpmRegistry} instead of the public registry, and records the wall time of
+ * each phase. Run with {@code ./gradlew e2eBenchmark}, which downloads the pinned tarballs once and
+ * writes the timings to {@code build/reports/e2e-benchmark}. The tarballs are the ones pinned by the
+ * lockfiles committed in {@code src/test/resources/e2e}, which {@code ./gradlew e2eRegistryLocks}
+ * resolves again from the public registry when the sample's packages change.
+ */
+@Tag("e2e")
+public class ApplyAngularCLIEndToEndTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void updatesSampleWorkspace() throws Exception {
+        String tarballs = System.getProperty("e2e.registry.tarballs");
+        assumeTrue(tarballs != null, "needs the pinned tarballs that the e2eBenchmark task downloads");
+
+        try (LocalNpmRegistry registry = LocalNpmRegistry.start(Paths.get(tarballs))) {
+            Path cache = dir.resolve("npm-cache");
+            String userConfig = System.getenv("NPM_CONFIG_USERCONFIG");
+            if (userConfig != null) {
+                // used by the toolchain installs that start before the workspace's .npmrc is written
+                registry.writeNpmrc(Paths.get(userConfig), cache);
+            }
+            List<SourceFile> sources = workspace(Files.readString(registry.writeNpmrc(dir.resolve(".npmrc"), cache)));
+
+            List<NodePhaseMetrics> phases = Collections.synchronizedList(new ArrayList<>());
+            ExecutionContext ctx = new InMemoryExecutionContext(t -> {
+                throw new AssertionError(t);
+            });
+            NodeBasedRecipeExecutionContextView.view(ctx)
+              .setToolchainDirectory(dir.resolve("toolchains"))
+              .setNodeModulesCacheDirectory(dir.resolve("node-modules-cache"))
+              .setMetricsListener(phases::add);
+
+            long start = System.nanoTime();
+            RecipeRun run = new ApplyAngularCLI("17").run(new InMemoryLargeSourceSet(sources), ctx, 1, 1);
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            report(phases, wallMillis);
+
+            assertThat(registry.misses()).as("packages missing from the pinned set").isEmpty();
+            assertThat(run.getChangeset().getAllResults())
+              .filteredOn(result -> result.getAfter() != null && "package.json".equals(result.getAfter().getSourcePath().toString()))
+              .singleElement()
+              .extracting(Result::getAfter)
+              .extracting(SourceFile::printAll)
+              .asString()
+              .containsPattern("\"@angular/core\": \"[~^]?17\\.");
+        }
+    }
+
+    private static List<SourceFile> workspace(String npmrc) throws Exception {
+        Path workspace = Paths.get(ApplyAngularCLIEndToEndTest.class.getResource("/e2e/workspace").toURI());
+        List<SourceFile> sources = new ArrayList<>();
+        sources.add(text(".npmrc", npmrc));
+        try (Stream<Path> files = Files.walk(workspace)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                sources.add(text(workspace.relativize(file).toString(), Files.readString(file)));
+            }
+        }
+        return sources;
+    }
+
+    private static void report(List<NodePhaseMetrics> phases, long wallMillis) throws Exception {
+        Path reports = Paths.get(System.getProperty("e2e.reports", "build/reports/e2e-benchmark"));
+        Files.createDirectories(reports);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(reports.resolve("phases.csv")))) {
+            csv.println("phase,workspace,durationMillis,childCpuMillis,childPeakRssBytes");
+            for (NodePhaseMetrics phase : phases) {
+                csv.printf("%s,%s,%d,%s,%s%n", phase.getPhase(), phase.getWorkspace() == null ? "" : phase.getWorkspace(),
+                  phase.getDurationMillis(), blank(phase.getChildCpuMillis()), blank(phase.getChildPeakRssBytes()));
+            }
+            csv.printf("TOTAL,,%d,,%n", wallMillis);
+        }
+    }
+
+    private static String blank(Long value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static PlainText text(String path, String text) {
+        return new PlainText(Tree.randomId(), Paths.get(path), Markers.EMPTY, null, false, null, null, text, emptyList());
+    }
+}
@@ -18,8 +18,10 @@ package org.openrewrite.codemods.migrate.angular;
 import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledIfEnvironmentVariable;
+import org.openrewrite.codemods.migrate.angular.table.AngularUpdateSteps;
 import org.openrewrite.test.RewriteTest;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.openrewrite.test.SourceSpecs.text;
 
 @DisabledIfEnvironmentVariable(named = "CI", matches = "true")
@@ -127,7 +129,9 @@ public class ApplyAngularCLITest implements RewriteTest {
     @Test
     void formatAngularStatement() {
         rewriteRun(
-          spec -> spec.recipe(new ApplyAngularCLI("8")),
+          spec -> spec.recipe(new ApplyAngularCLI("8"))
+            .dataTable(AngularUpdateSteps.Row.class, rows -> assertThat(rows).containsExactly(
+              new AngularUpdateSteps.Row("angular.json", "8", null, false))),
           text(
             ANGULAR_JSON,
             ANGULAR_JSON,
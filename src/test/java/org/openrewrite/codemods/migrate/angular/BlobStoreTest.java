@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class BlobStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void storesEachContentOnce() throws Exception {
+        BlobStore blobs = new BlobStore(dir.resolve("blobs"));
+        Path fork = Files.createDirectories(dir.resolve("fork"));
+        Path branch = Files.createDirectories(dir.resolve("branch"));
+
+        assertThat(blobs.link(bytes("export const a = 1;"), fork.resolve("a.ts"))).isTrue();
+        assertThat(blobs.link(bytes("export const a = 1;"), branch.resolve("a.ts"))).isTrue();
+        assertThat(blobs.link(bytes("export const a = 2;"), branch.resolve("b.ts"))).isTrue();
+
+        assertThat(Files.isSameFile(fork.resolve("a.ts"), branch.resolve("a.ts"))).isTrue();
+        assertThat(branch.resolve("b.ts")).hasContent("export const a = 2;");
+        assertThat(blobCount()).isEqualTo(2);
+    }
+
+    @Test
+    void prunesContentsNoTreeLinksTo() throws Exception {
+        BlobStore blobs = new BlobStore(dir.resolve("blobs"));
+        Path tree = Files.createDirectories(dir.resolve("tree"));
+        blobs.link(bytes("kept"), tree.resolve("kept.ts"));
+        blobs.link(bytes("dropped"), tree.resolve("dropped.ts"));
+        Files.delete(tree.resolve("dropped.ts"));
+
+        assertThat(blobs.prune(0)).isEqualTo(1);
+        assertThat(blobCount()).isEqualTo(1);
+        assertThat(tree.resolve("kept.ts")).hasContent("kept");
+    }
+
+    @Test
+    void nodeDoesNotWriteThroughLinks() throws Exception {
+        assumeTrue(hasNode(), "needs node on the PATH");
+        BlobStore blobs = new BlobStore(dir.resolve("blobs"));
+        Path fork = Files.createDirectories(dir.resolve("fork"));
+        Path branch = Files.createDirectories(dir.resolve("branch"));
+        blobs.link(bytes("export const a = 1;"), fork.resolve("a.ts"));
+        blobs.link(bytes("export const a = 1;"), branch.resolve("a.ts"));
+
+        ProcessBuilder node = new ProcessBuilder("node", "-e",
+          "require('fs').writeFileSync('a.ts', 'export const a = 2;')")
+          .directory(fork.toFile())
+          .inheritIO();
+        node.environment().put("NODE_OPTIONS", BlobStore.nodeOptions(null));
+        assertThat(node.start().waitFor()).isZero();
+
+        assertThat(fork.resolve("a.ts")).hasContent("export const a = 2;");
+        assertThat(branch.resolve("a.ts")).hasContent("export const a = 1;");
+        assertThat(Files.isSameFile(fork.resolve("a.ts"), branch.resolve("a.ts"))).isFalse();
+    }
+
+    @Test
+    void nodeRecordsTheFilesItWrites() throws Exception {
+        assumeTrue(hasNode(), "needs node on the PATH");
+        Files.writeString(dir.resolve("a.ts"), "export const a = 1;");
+        Files.writeString(dir.resolve("b.ts"), "export const b = 1;");
+        Path writeLog = dir.resolve("writes.log");
+
+        ProcessBuilder node = new ProcessBuilder("node", "-e",
+          "const fs = require('fs'); fs.readFileSync('b.ts'); fs.writeFileSync('a.ts', 'export const a = 2;');" +
+          " fs.writeFileSync('c.ts.tmp', ''); fs.renameSync('c.ts.tmp', 'c.ts'); fs.unlinkSync('b.ts');")
+          .directory(dir.toFile())
+          .inheritIO();
+        node.environment().put("NODE_OPTIONS", BlobStore.nodeOptions(null));
+        node.environment().put(WorkspaceRuns.WRITE_LOG, writeLog.toString());
+        assertThat(node.start().waitFor()).isZero();
+
+        assertThat(Files.readAllLines(writeLog)).containsExactlyInAnyOrder(
+          dir.resolve("a.ts").toString(), dir.resolve("c.ts.tmp").toString(),
+          dir.resolve("c.ts").toString(), dir.resolve("b.ts").toString());
+    }
+
+    private long blobCount() throws Exception {
+        try (Stream<Path> files = Files.walk(dir.resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean hasNode() {
+        try {
+            return new ProcessBuilder("node", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
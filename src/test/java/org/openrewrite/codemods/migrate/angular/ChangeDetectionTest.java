@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.Tree;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.text.PlainText;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ChangeDetectionTest {
+
+    @TempDir
+    Path repo;
+
+    NodeBasedRecipe.Accumulator acc;
+
+    @BeforeEach
+    void materialize() {
+        acc = materialize(repo);
+    }
+
+    @Test
+    void fullScanIgnoresTouchedFiles() throws IOException {
+        simulateNode(acc, false);
+        acc.detectChanges(null);
+        assertThat(acc.getModified()).containsExactlyInAnyOrder(repo.resolve("src/edited.ts"), repo.resolve("src/deleted.ts"));
+    }
+
+    @Test
+    void journalReportsOnlyRealChanges() throws IOException {
+        ChangeJournal journal = ChangeJournal.watch(acc.watchedDirectories());
+        assumeTrue(journal != null, "file system events are only watched on Linux");
+        try {
+            simulateNode(acc, true);
+            acc.detectChanges(journal.changed());
+        } finally {
+            journal.close();
+        }
+        assertThat(acc.getModified()).containsExactlyInAnyOrder(repo.resolve("src/edited.ts"), repo.resolve("src/deleted.ts"));
+    }
+
+    @Test
+    void journalWaitsForEveryChangeMadeBeforeItIsAsked() throws Exception {
+        ChangeJournal journal = ChangeJournal.watch(acc.watchedDirectories());
+        assumeTrue(journal != null, "file system events are only watched on Linux");
+        try {
+            for (int round = 0; round < 3; round++) {
+                Process process = new ProcessBuilder("sh", "-c", "for i in $(seq 1 200); do echo " + round + " > src/f$i.ts; done")
+                  .directory(repo.toFile())
+                  .start();
+                assertThat(process.waitFor()).isZero();
+                assertThat(journal.changed()).hasSize(200);
+            }
+            assertThat(journal.changed()).isEmpty();
+        } finally {
+            journal.close();
+        }
+        try (Stream<Path> files = Files.list(repo)) {
+            assertThat(files).containsExactly(repo.resolve("src"));
+        }
+    }
+
+    @Test
+    void comparesFilesCopiedFromThePreviousTreeByContent(@TempDir Path next) throws IOException {
+        NodeBasedRecipe.Accumulator copied = new NodeBasedRecipe.Accumulator(next, MaterializationPolicy.all());
+        copied.copyFromPrevious(repo);
+
+        Files.setLastModifiedTime(next.resolve("src/touched.ts"), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Files.writeString(next.resolve("src/edited.ts"), "export const b = 2;");
+        Files.setLastModifiedTime(next.resolve("src/edited.ts"), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        copied.detectChanges(null);
+
+        assertThat(copied.getModified()).containsExactly(next.resolve("src/edited.ts"));
+    }
+
+    @Test
+    void movedTreeKeepsWhatThePreviousRecipeSaw(@TempDir Path work) throws IOException {
+        NodeBasedRecipe.Accumulator first = materialize(work.resolve("first"));
+        simulateNode(first, false);
+        first.detectChanges(null);
+
+        NodeBasedRecipe.Accumulator second = new NodeBasedRecipe.Accumulator(
+          Files.createDirectory(work.resolve("second")), MaterializationPolicy.all());
+        second.moveFromPrevious(first);
+        assertThat(work.resolve("first")).doesNotExist();
+        assertThat(work.resolve("second/src/deleted.ts")).doesNotExist();
+
+        editAgain(second);
+        second.detectChanges(null);
+
+        assertThat(second.getModified()).containsExactly(work.resolve("second/src/edited.ts"));
+        assertThat(first.content(text("src/edited.ts", ""))).isEqualTo("export const b = 2;");
+        assertThat(second.content(text("src/edited.ts", ""))).isEqualTo("export const b = 3;");
+    }
+
+    @Test
+    void treeIsCopiedWhenTheNextDirectoryIsNotEmpty(@TempDir Path work) throws IOException {
+        NodeBasedRecipe.Accumulator first = materialize(work.resolve("first"));
+        simulateNode(first, false);
+        first.detectChanges(null);
+
+        Path next = Files.createDirectory(work.resolve("second"));
+        Files.writeString(next.resolve("left-over.txt"), "from a previous attempt");
+        NodeBasedRecipe.Accumulator second = new NodeBasedRecipe.Accumulator(next, MaterializationPolicy.all());
+        second.moveFromPrevious(first);
+        assertThat(work.resolve("first/src/edited.ts")).hasContent("export const b = 2;");
+        assertThat(next.resolve("src/edited.ts")).hasContent("export const b = 2;");
+        assertThat(next.resolve("src/deleted.ts")).doesNotExist();
+
+        editAgain(second);
+        second.detectChanges(null);
+
+        assertThat(second.getModified()).containsExactly(next.resolve("src/edited.ts"));
+        assertThat(first.content(text("src/edited.ts", ""))).isEqualTo("export const b = 2;");
+        assertThat(second.content(text("src/edited.ts", ""))).isEqualTo("export const b = 3;");
+    }
+
+    private static NodeBasedRecipe.Accumulator materialize(Path directory) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(directory, MaterializationPolicy.all());
+        acc.writeSource(text("src/touched.ts", "export const a = 1;"));
+        acc.writeSource(text("src/edited.ts", "export const b = 1;"));
+        acc.writeSource(text("src/deleted.ts", "export const c = 1;"));
+        acc.finishMaterialization();
+        return acc;
+    }
+
+    private static void simulateNode(NodeBasedRecipe.Accumulator acc, boolean editWithinSameMillisecond) throws IOException {
+        Path repo = acc.getDirectory();
+        Files.setLastModifiedTime(repo.resolve("src/touched.ts"), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Files.writeString(repo.resolve("src/edited.ts"), "export const b = 2;");
+        long materializedAt = acc.files.timestamp(acc.files.id(Paths.get("src", "edited.ts").toString()));
+        Files.setLastModifiedTime(repo.resolve("src/edited.ts"),
+          FileTime.fromMillis(editWithinSameMillisecond ? materializedAt : materializedAt + 1000));
+        Files.delete(repo.resolve("src/deleted.ts"));
+    }
+
+    private static void editAgain(NodeBasedRecipe.Accumulator acc) throws IOException {
+        Path edited = acc.getDirectory().resolve("src/edited.ts");
+        Files.writeString(edited, "export const b = 3;");
+        Files.setLastModifiedTime(edited, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+    }
+
+    private static PlainText text(String path, String text) {
+        return new PlainText(Tree.randomId(), Paths.get(path), Markers.EMPTY, null, false, null, null, text, emptyList());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.Tree;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.text.PlainText;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheckpointTest {
+    private static final String ANGULAR_17 = "{\"name\":\"ApplyAngularCLI\",\"options\":{\"version\":\"17\"}}";
+
+    @TempDir
+    Path dir;
+
+    Path repo;
+    PlainText unchanged = text("src/unchanged.ts", "export const a = 1;");
+    PlainText edited = text("src/edited.ts", "export const b = 1;");
+
+    @BeforeEach
+    void directories() throws Exception {
+        repo = Files.createDirectories(dir.resolve("repo"));
+        Files.createDirectories(dir.resolve("checkpoint"));
+    }
+
+    @Test
+    void retryResumesCompletedRun() throws Exception {
+        NodeBasedRecipe.Accumulator failed = attempt(unchanged, edited);
+        simulateNode();
+        failed.detectChanges(null);
+        failed.checkpoint.complete(failed);
+        FileTime materialized = Files.getLastModifiedTime(repo.resolve("src/unchanged.ts"));
+
+        NodeBasedRecipe.Accumulator retry = attempt(unchanged, edited);
+        assertThat(Files.getLastModifiedTime(repo.resolve("src/unchanged.ts"))).isEqualTo(materialized);
+        assertThat(repo.resolve("src/created.ts")).doesNotExist();
+        assertThat(repo.resolve("src/edited.ts")).hasContent("export const b = 1;");
+
+        assertThat(retry.checkpoint.isCompleted(retry)).isTrue();
+        retry.checkpoint.restore(retry);
+        assertThat(repo.resolve("src/edited.ts")).hasContent("export const b = 2;");
+        assertThat(retry.getModified()).containsExactly(repo.resolve("src/edited.ts"));
+    }
+
+    @Test
+    void changedSourceRunsAgain() throws Exception {
+        NodeBasedRecipe.Accumulator failed = attempt(unchanged, edited);
+        simulateNode();
+        failed.detectChanges(null);
+        failed.checkpoint.complete(failed);
+
+        NodeBasedRecipe.Accumulator retry = attempt(unchanged, text("src/edited.ts", "export const b = 3;"));
+        assertThat(repo.resolve("src/edited.ts")).hasContent("export const b = 3;");
+        assertThat(retry.checkpoint.isCompleted(retry)).isFalse();
+    }
+
+    @Test
+    void editedSourceWithSameIdRunsAgain() throws Exception {
+        NodeBasedRecipe.Accumulator failed = attempt(unchanged, edited);
+        simulateNode();
+        failed.detectChanges(null);
+        failed.checkpoint.complete(failed);
+
+        NodeBasedRecipe.Accumulator retry = attempt(unchanged, edited.withText("export const b = 3;"));
+        assertThat(repo.resolve("src/edited.ts")).hasContent("export const b = 3;");
+        assertThat(retry.checkpoint.isCompleted(retry)).isFalse();
+    }
+
+    @Test
+    void completedRunOfOtherRecipeRunsAgain() throws Exception {
+        NodeBasedRecipe.Accumulator failed = attempt(ANGULAR_17, unchanged, edited);
+        simulateNode();
+        failed.detectChanges(null);
+        failed.checkpoint.complete(failed);
+
+        NodeBasedRecipe.Accumulator retry = attempt("{\"name\":\"ApplyAngularCLI\",\"options\":{\"version\":\"18\"}}",
+          unchanged, edited);
+        assertThat(retry.checkpoint.isCompleted(retry)).isFalse();
+    }
+
+    private NodeBasedRecipe.Accumulator attempt(PlainText... sources) {
+        return attempt(ANGULAR_17, sources);
+    }
+
+    private NodeBasedRecipe.Accumulator attempt(String recipe, PlainText... sources) {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(repo, MaterializationPolicy.all());
+        acc.checkpoint = Checkpoint.open(dir.resolve("checkpoint"), recipe);
+        for (PlainText source : sources) {
+            acc.writeSource(source);
+        }
+        acc.finishMaterialization();
+        if (acc.checkpoint.isResumed()) {
+            acc.checkpoint.removeStrayFiles(acc);
+        }
+        acc.checkpoint.saveTree(NodePhase.MATERIALIZE, acc);
+        return acc;
+    }
+
+    private void simulateNode() throws Exception {
+        Path edited = repo.resolve("src/edited.ts");
+        Files.writeString(edited, "export const b = 2;");
+        Files.setLastModifiedTime(edited, FileTime.fromMillis(Files.getLastModifiedTime(edited).toMillis() + 1000));
+        Files.writeString(repo.resolve("src/created.ts"), "export const c = 1;");
+    }
+
+    private static PlainText text(String path, String text) {
+        return new PlainText(Tree.randomId(), Paths.get(path), Markers.EMPTY, null, false, null, null, text, emptyList());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.json.tree.Json;
+import org.openrewrite.yaml.tree.Yaml;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentPrefetcherTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsModifiedFilesAheadWithinBudget() throws Exception {
+        FileIndex files = new FileIndex();
+        for (int i = 0; i < 10; i++) {
+            Files.writeString(dir.resolve(i + ".ts"), "export const n = " + i + ";");
+            int id = files.put(i + ".ts", 0, 20, 0);
+            if (i % 2 == 0) {
+                files.markModified(id);
+            }
+        }
+
+        // room for two files at a time, each taken one making room for the next
+        ContentPrefetcher prefetcher = ContentPrefetcher.start(dir, files, 40, emptyMap(), null);
+        for (int i = 0; i < 10; i += 2) {
+            assertThat(decode(prefetcher.take(i + ".ts"))).isEqualTo("export const n = " + i + ";");
+        }
+        assertThat(prefetcher.take("0.ts")).as("evicted once taken").isNull();
+        assertThat(prefetcher.take("1.ts")).as("not modified").isNull();
+    }
+
+    @Test
+    void mapsLargeFiles() throws Exception {
+        String large = "x".repeat(2 * 1024 * 1024);
+        Files.writeString(dir.resolve("large.json"), large);
+        FileIndex files = new FileIndex();
+        files.markModified(files.put("large.json", 0, large.length(), 0));
+
+        ContentPrefetcher prefetcher = ContentPrefetcher.start(dir, files, 1024, emptyMap(), null);
+        assertThat(decode(prefetcher.take("large.json"))).isEqualTo(large);
+    }
+
+    @Test
+    void dropsMappedFilesWhenStopped() throws Exception {
+        Files.writeString(dir.resolve("small.ts"), "small");
+        Files.writeString(dir.resolve("large.json"), "x".repeat(2 * 1024 * 1024));
+        FileIndex files = new FileIndex();
+        files.markModified(files.put("small.ts", 0, 5, 0));
+        files.markModified(files.put("large.json", 0, 2 * 1024 * 1024, 0));
+
+        ContentPrefetcher prefetcher = ContentPrefetcher.start(dir, files, Long.MAX_VALUE, emptyMap(), null);
+        prefetcher.stop();
+        assertThat(decode(prefetcher.take("small.ts"))).isEqualTo("small");
+        assertThat(prefetcher.take("large.json")).isNull();
+    }
+
+    @Test
+    void parsesJsonAndYaml() throws Exception {
+        Files.writeString(dir.resolve("angular.json"), "{\"version\": 1}");
+        Files.writeString(dir.resolve("broken.json"), "{\"version\": ");
+        Files.writeString(dir.resolve("ci.yml"), "steps:\n  - run: ng build\n");
+        FileIndex files = new FileIndex();
+        files.markModified(files.put("angular.json", 0, 14, 0));
+        files.markModified(files.put("broken.json", 0, 12, 0));
+        files.markModified(files.put("ci.yml", 0, 25, 0));
+
+        ContentPrefetcher prefetcher = ContentPrefetcher.start(dir, files, Long.MAX_VALUE, emptyMap(), new InMemoryExecutionContext());
+        assertThat(prefetcher.take("angular.json").getParsed()).isInstanceOf(Json.Document.class);
+        assertThat(prefetcher.take("ci.yml").getParsed()).isInstanceOf(Yaml.Documents.class);
+        ContentPrefetcher.Prefetched broken = prefetcher.take("broken.json");
+        assertThat(broken.getParsed()).isNull();
+        assertThat(decode(broken)).isEqualTo("{\"version\": ");
+    }
+
+    @Test
+    void parsesInTheCharsetOfTheSourceFile() throws Exception {
+        Files.write(dir.resolve("i18n.json"), "{\"title\": \"caf\u00e9\"}".getBytes(StandardCharsets.ISO_8859_1));
+        FileIndex files = new FileIndex();
+        files.markModified(files.put("i18n.json", 0, 17, 0));
+
+        ContentPrefetcher prefetcher = ContentPrefetcher.start(dir, files, Long.MAX_VALUE,
+                singletonMap("i18n.json", StandardCharsets.ISO_8859_1), new InMemoryExecutionContext());
+        assertThat(prefetcher.take("i18n.json").getParsed().printAll()).isEqualTo("{\"title\": \"caf\u00e9\"}");
+    }
+
+    private static String decode(ContentPrefetcher.Prefetched prefetched) {
+        return StandardCharsets.UTF_8.decode(prefetched.getContents()).toString();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An npm registry on the loopback interface that serves a pinned set of package tarballs, so that
+ * tests can install and update Angular workspaces without network access and get the same packages
+ * every time. The metadata of each package is generated from the {@code package.json} in its tarballs,
+ * which makes the highest release version of a package its {@code latest}. Requests for packages that
+ * aren't in the set get a 404 and are remembered, so a test can tell that the set is incomplete.
+ */
+class LocalNpmRegistry implements Closeable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TARBALLS = "/-/tarballs/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path tarballs;
+    private final Map<String, byte[]> packuments = new HashMap<>();
+    private final Set<String> misses = ConcurrentHashMap.newKeySet();
+
+    private LocalNpmRegistry(Path tarballs) throws IOException {
+        this.tarballs = tarballs;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(8, r -> {
+            Thread thread = new Thread(r, "local-npm-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * @param tarballs A directory of {@code .tgz} files as npm publishes them.
+     */
+    static LocalNpmRegistry start(Path tarballs) throws IOException {
+        LocalNpmRegistry registry = new LocalNpmRegistry(tarballs);
+        registry.server.start();
+        registry.index();
+        return registry;
+    }
+
+    String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Write an {@code .npmrc} that points npm at this registry and keeps it from contacting anything
+     * else, with its own cache so that packages cached from other registries aren't used.
+     */
+    Path writeNpmrc(Path npmrc, Path cache) throws IOException {
+        Files.createDirectories(npmrc.toAbsolutePath().getParent());
+        Files.write(npmrc, Arrays.asList(
+                "registry=" + url(),
+                "cache=" + cache.toAbsolutePath(),
+                "audit=false",
+                "fund=false",
+                "update-notifier=false",
+                "fetch-retries=0"));
+        return npmrc;
+    }
+
+    /**
+     * @return The packages npm asked for that aren't in the set.
+     */
+    Set<String> misses() {
+        return new TreeSet<>(misses);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void index() throws IOException {
+        Map<String, ObjectNode> versionsByPackage = new TreeMap<>();
+        Map<String, String> latest = new HashMap<>();
+        try (Stream<Path> files = Files.list(tarballs)) {
+            for (Path tarball : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".tgz"))::iterator) {
+                byte[] bytes = Files.readAllBytes(tarball);
+                ObjectNode manifest = (ObjectNode) MAPPER.readTree(packageJson(tarball, bytes));
+                String name = manifest.path("name").asText();
+                String version = manifest.path("version").asText();
+                manifest.put("_id", name + "@" + version);
+                ObjectNode dist = manifest.putObject("dist");
+                dist.put("tarball", url() + TARBALLS.substring(1) + tarball.getFileName());
+                dist.put("shasum", hex(digest("SHA-1", bytes)));
+                dist.put("integrity", "sha512-" + Base64.getEncoder().encodeToString(digest("SHA-512", bytes)));
+                versionsByPackage.computeIfAbsent(name, n -> MAPPER.createObjectNode()).set(version, manifest);
+                if (!version.contains("-") && (!latest.containsKey(name) || compare(version, latest.get(name)) > 0)) {
+                    latest.put(name, version);
+                }
+            }
+        }
+        for (Map.Entry<String, ObjectNode> versions : versionsByPackage.entrySet()) {
+            String name = versions.getKey();
+            ObjectNode packument = MAPPER.createObjectNode();
+            packument.put("_id", name);
+            packument.put("name", name);
+            if (latest.containsKey(name)) {
+                packument.putObject("dist-tags").put("latest", latest.get(name));
+            }
+            packument.set("versions", versions.getValue());
+            packuments.put(name, MAPPER.writeValueAsBytes(packument));
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // scoped packages are requested as /@scope%2fname, which the decoded path turns into /@scope/name
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith(TARBALLS)) {
+                Path tarball = tarballs.resolve(path.substring(TARBALLS.length())).normalize();
+                if (tarball.getParent().equals(tarballs.normalize()) && Files.isRegularFile(tarball)) {
+                    respond(exchange, "application/octet-stream", Files.readAllBytes(tarball));
+                    return;
+                }
+            } else {
+                String name = path.substring(1);
+                byte[] packument = packuments.get(name);
+                if (packument != null) {
+                    respond(exchange, "application/json", packument);
+                    return;
+                }
+            }
+            misses.add(path);
+            exchange.sendResponseHeaders(404, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return The {@code package.json} at the top of the tarball, which npm finds in whatever directory
+     * the tarball's entries are in, usually {@code package/}.
+     */
+    private static byte[] packageJson(Path tarball, byte[] bytes) throws IOException {
+        try (InputStream tar = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] header = new byte[512];
+            while (tar.readNBytes(header, 0, 512) == 512 && header[0] != 0) {
+                String name = field(header, 0, 100);
+                String prefix = field(header, 345, 155);
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+                long size = Long.parseLong(field(header, 124, 12).trim(), 8);
+                byte type = header[156];
+                if ((type == '0' || type == 0) && name.matches("[^/]+/package\\.json")) {
+                    return tar.readNBytes((int) size);
+                }
+                tar.skipNBytes((size + 511) / 512 * 512);
+            }
+        }
+        throw new IOException("No package.json in " + tarball);
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static int compare(String v1, String v2) {
+        // build metadata doesn't take part in precedence
+        String[] a = v1.replaceFirst("\\+.*", "").split("\\.");
+        String[] b = v2.replaceFirst("\\+.*", "").split("\\.");
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int c = Integer.compare(Integer.parseInt(a[i]), Integer.parseInt(b[i]));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static byte[] digest(String algorithm, byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class LocalNpmRegistryTest {
+
+    HttpClient http = HttpClient.newHttpClient();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesPackumentsAndTarballs() throws Exception {
+        Path tarballs = Files.createDirectories(dir.resolve("tarballs"));
+        byte[] tarball = tarball("{\"name\": \"@scope/greet\", \"version\": \"1.1.0\"}", "module.exports = 'hello';");
+        Files.write(tarballs.resolve("@scope+greet-1.1.0.tgz"), tarball);
+        Files.write(tarballs.resolve("@scope+greet-1.0.0.tgz"), tarball("{\"name\": \"@scope/greet\", \"version\": \"1.0.0\"}", ""));
+        Files.write(tarballs.resolve("@scope+greet-2.0.0-rc.0.tgz"), tarball("{\"name\": \"@scope/greet\", \"version\": \"2.0.0-rc.0\"}", ""));
+
+        try (LocalNpmRegistry registry = LocalNpmRegistry.start(tarballs)) {
+            JsonNode packument = new ObjectMapper().readTree(get(registry.url() + "@scope%2fgreet"));
+            assertThat(packument.path("dist-tags").path("latest").asText()).isEqualTo("1.1.0");
+            assertThat(packument.path("versions").size()).isEqualTo(3);
+
+            JsonNode dist = packument.path("versions").path("1.1.0").path("dist");
+            assertThat(getBytes(dist.path("tarball").asText())).isEqualTo(tarball);
+            assertThat(dist.path("integrity").asText())
+              .isEqualTo("sha512-" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-512").digest(tarball)));
+
+            assertThat(registry.misses()).isEmpty();
+            get(registry.url() + "left-pad");
+            assertThat(registry.misses()).containsExactly("/left-pad");
+        }
+    }
+
+    @Test
+    void npmInstallsFromIt() throws Exception {
+        assumeTrue(hasNpm(), "needs npm on the PATH");
+        Path tarballs = Files.createDirectories(dir.resolve("tarballs"));
+        Files.write(tarballs.resolve("greet-1.0.0.tgz"), tarball("{\"name\": \"greet\", \"version\": \"1.0.0\"}", "module.exports = 'hello';"));
+        Path project = Files.createDirectories(dir.resolve("project"));
+        Files.writeString(project.resolve("package.json"), "{\"name\": \"project\", \"dependencies\": {\"greet\": \"^1.0.0\"}}");
+
+        try (LocalNpmRegistry registry = LocalNpmRegistry.start(tarballs)) {
+            Path npmrc = registry.writeNpmrc(project.resolve(".npmrc"), dir.resolve("npm-cache"));
+            Process npm = new ProcessBuilder("npm", "install", "--userconfig", npmrc.toString())
+              .directory(project.toFile())
+              .redirectErrorStream(true)
+              .start();
+            String output = new String(npm.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(npm.waitFor()).as(output).isZero();
+            assertThat(project.resolve("node_modules/greet/index.js")).hasContent("module.exports = 'hello';");
+            assertThat(registry.misses()).isEmpty();
+        }
+    }
+
+    private String get(String url) throws Exception {
+        return new String(getBytes(url), StandardCharsets.UTF_8);
+    }
+
+    private byte[] getBytes(String url) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+
+    /**
+     * A tarball like {@code npm pack} makes, with a {@code package.json} and an {@code index.js}.
+     */
+    private static byte[] tarball(String packageJson, String indexJs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            entry(gzip, "package/package.json", packageJson.getBytes(StandardCharsets.UTF_8));
+            entry(gzip, "package/index.js", indexJs.getBytes(StandardCharsets.UTF_8));
+            gzip.write(new byte[1024]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void entry(GZIPOutputStream tar, String name, byte[] contents) throws IOException {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", contents.length));
+        put(header, 136, String.format("%011o", 0));
+        header[156] = '0';
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[155] = ' ';
+        tar.write(header);
+        tar.write(contents);
+        tar.write(new byte[(512 - contents.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static boolean hasNpm() {
+        try {
+            return new ProcessBuilder("npm", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
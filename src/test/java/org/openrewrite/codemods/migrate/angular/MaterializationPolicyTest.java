@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.Tree;
+import org.openrewrite.marker.Markers;
+import org.openrewrite.text.PlainText;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MaterializationPolicyTest {
+
+    @TempDir
+    Path repo;
+
+    @Test
+    void writesOnlyWhatTheWorkspaceReads() {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(repo, MaterializationPolicy.angular());
+
+        acc.materialize(text("e2e/app.e2e.ts", "export {};"));
+        acc.materialize(text("angular.json", """
+          {"projects": {"app": {"root": "projects/app", "sourceRoot": "projects/app/src"}}}
+          """));
+        acc.materialize(text("docs/README.md", "# Docs"));
+        acc.materialize(text("fixtures/data.json", "{}"));
+        acc.materialize(text("karma.conf.js", "module.exports = function (config) {};"));
+        acc.materialize(text(".eslintrc.json", "{}"));
+        acc.materialize(text(".github/workflows/ci.yml", "on: push"));
+        acc.materialize(text(".gitignore", "/dist"));
+        acc.materialize(text("package.json", "{}"));
+        acc.materialize(text("projects/app/src/main.ts", "bootstrapApplication(AppComponent);"));
+        acc.materialize(text("tsconfig.e2e.json", """
+          {
+            // comments are allowed in tsconfig files
+            "include": ["e2e/**/*.ts"],
+          }
+          """));
+        acc.finishMaterialization();
+
+        assertThat(repo.resolve("angular.json")).isRegularFile();
+        assertThat(repo.resolve("package.json")).isRegularFile();
+        assertThat(repo.resolve("tsconfig.e2e.json")).isRegularFile();
+        assertThat(repo.resolve("projects/app/src/main.ts")).isRegularFile();
+        assertThat(repo.resolve("e2e/app.e2e.ts")).isRegularFile();
+        assertThat(repo.resolve("karma.conf.js")).isRegularFile();
+        assertThat(repo.resolve(".eslintrc.json")).isRegularFile();
+        assertThat(repo.resolve(".github/workflows/ci.yml")).isRegularFile();
+        assertThat(repo.resolve(".gitignore")).isRegularFile();
+        assertThat(repo.resolve("docs/README.md")).doesNotExist();
+        assertThat(repo.resolve("fixtures/data.json")).doesNotExist();
+        assertThat(acc.getSkippedFiles()).isEqualTo(2);
+    }
+
+    @Test
+    void writesEverythingByDefault() {
+        NodeBasedRecipe.Accumulator acc = new NodeBasedRecipe.Accumulator(repo, MaterializationPolicy.all());
+        acc.materialize(text("docs/README.md", "# Docs"));
+        acc.finishMaterialization();
+        assertThat(repo.resolve("docs/README.md")).isRegularFile();
+    }
+
+    private static PlainText text(String path, String text) {
+        return new PlainText(Tree.randomId(), Paths.get(path), Markers.EMPTY, null, false, null, null, text, emptyList());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NgUpdateOutputParserTest {
+
+    @Test
+    void packagesAndMigrations() {
+        List<NgUpdateOutputParser.Result> results = new ArrayList<>();
+        NgUpdateOutputParser parser = new NgUpdateOutputParser(false, results::add);
+        """
+          Using package manager: npm
+          Collecting installed dependencies...
+          Found 21 dependencies.
+          Fetching dependency metadata from registry...
+              Updating package.json with dependency @angular/cli @ "17.2.0" (was "16.2.12")...
+              Updating package.json with dependency @angular/core @ "17.2.0" (was "16.2.12")...
+          UPDATE package.json (1041 bytes)
+          npm WARN deprecated inflight@1.0.6: This module is not supported
+          \u2714 Packages successfully installed.
+          ** Executing migrations of package '@angular/core' **
+
+          \u25B8 Updates two-way bindings that have an invalid expression to use the longform expression instead.
+            UPDATE src/app/app.component.html (310 bytes)
+            Migration completed (1 file modified).
+
+          \u25B8 Replaces `CompilerOptions.useJit` and `CompilerOptions.missingTranslation`.
+            Migration completed (No changes made).
+          """.lines().forEach(parser::line);
+
+        assertThat(parser.completed()).isNull();
+        assertThat(results).containsExactly(
+          new NgUpdateOutputParser.Result(NgUpdateOutputParser.Kind.PACKAGE, "@angular/cli", "16.2.12 -> 17.2.0", null, null),
+          new NgUpdateOutputParser.Result(NgUpdateOutputParser.Kind.PACKAGE, "@angular/core", "16.2.12 -> 17.2.0", null, null),
+          new NgUpdateOutputParser.Result(NgUpdateOutputParser.Kind.WARNING, null, "deprecated inflight@1.0.6: This module is not supported", null, null),
+          new NgUpdateOutputParser.Result(NgUpdateOutputParser.Kind.MIGRATION, "@angular/core",
+            "Updates two-way bindings that have an invalid expression to use the longform expression instead.", "1 file modified", null),
+          new NgUpdateOutputParser.Result(NgUpdateOutputParser.Kind.MIGRATION, "@angular/core",
+            "Replaces `CompilerOptions.useJit` and `CompilerOptions.missingTranslation`.", "No changes made", null)
+        );
+    }
+
+    @Test
+    void failedMigrationFailsTheRun() {
+        List<NgUpdateOutputParser.Result> results = new ArrayList<>();
+        NgUpdateOutputParser parser = new NgUpdateOutputParser(true, results::add);
+        """
+          ** Executing migrations of package '@angular/core' **
+
+          \u25B8 Updates two-way bindings that have an invalid expression to use the longform expression instead.
+          \u001B[31m\u2716 Migration failed: Cannot read properties of undefined (reading 'kind')\u001B[39m
+            See "/tmp/ng-4Xk2/angular-errors.log" for further details.
+          """.lines().forEach(parser::line);
+
+        assertThat(parser.completed()).isEqualTo("Cannot read properties of undefined (reading 'kind')");
+        assertThat(results).singleElement().satisfies(result -> {
+            assertThat(result.getKind()).isEqualTo(NgUpdateOutputParser.Kind.MIGRATION);
+            assertThat(result.getOutcome()).isEqualTo("failed: Cannot read properties of undefined (reading 'kind')");
+            assertThat(result.getDurationMillis()).isNotNull();
+        });
+    }
+
+    @Test
+    void errorsOfSuccessfulRunAreReportedWithoutFailingIt() {
+        List<NgUpdateOutputParser.Result> results = new ArrayList<>();
+        NgUpdateOutputParser parser = new NgUpdateOutputParser(false, results::add);
+        """
+          npm ERR! code ERESOLVE
+          Error: Cannot find optional peer dependency @angular/localize
+          \u25B8 Replaces `CompilerOptions.useJit` and `CompilerOptions.missingTranslation`.
+            Migration completed (No changes made).
+          """.lines().forEach(parser::line);
+
+        assertThat(parser.completed()).isNull();
+        assertThat(results).extracting(NgUpdateOutputParser.Result::getKind).containsExactly(
+          NgUpdateOutputParser.Kind.ERROR, NgUpdateOutputParser.Kind.ERROR, NgUpdateOutputParser.Kind.MIGRATION);
+    }
+
+    @Test
+    void unhandledExceptionFailsTheRun() {
+        List<NgUpdateOutputParser.Result> results = new ArrayList<>();
+        NgUpdateOutputParser parser = new NgUpdateOutputParser(false, results::add);
+        parser.line("An unhandled exception occurred: Cannot find module '@angular/core/schematics'");
+
+        assertThat(parser.completed()).isEqualTo("Cannot find module '@angular/core/schematics'");
+        assertThat(results).singleElement().extracting(NgUpdateOutputParser.Result::getKind).isEqualTo(NgUpdateOutputParser.Kind.ERROR);
+    }
+
+    @Test
+    void migrationCutShort() {
+        List<NgUpdateOutputParser.Result> results = new ArrayList<>();
+        NgUpdateOutputParser parser = new NgUpdateOutputParser(false, results::add);
+        parser.line("\u25B8 Updates two-way bindings that have an invalid expression to use the longform expression instead.");
+
+        assertThat(parser.completed()).isNull();
+        assertThat(results).singleElement().extracting(NgUpdateOutputParser.Result::getOutcome).isEqualTo("not completed");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class NodeMemorySchedulerTest {
+    private static final String OUT_OF_MEMORY = "FATAL ERROR: Reached heap limit Allocation failed - JavaScript heap out of memory";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void heapGrowsWithTheWorkspace() {
+        assertThat(NodeMemoryScheduler.heapMb(10, 20_000)).isEqualTo(768);
+        assertThat(NodeMemoryScheduler.heapMb(20_000, 200L * 1024 * 1024)).isEqualTo(2_816);
+        assertThat(NodeMemoryScheduler.heapMb(1_000_000, 10L * 1024 * 1024 * 1024)).isEqualTo(16 * 1024);
+    }
+
+    @Test
+    void retriesWithALargerHeapAfterRunningOutOfMemory() throws IOException {
+        NodeMemoryScheduler scheduler = NodeMemoryScheduler.forBudget(64L * 1024 * 1024 * 1024);
+        List<String> nodeOptions = new ArrayList<>();
+
+        String result = scheduler.run(1024, Map.of("TERM", "dumb"), env -> {
+            nodeOptions.add(env.get("NODE_OPTIONS"));
+            if (nodeOptions.size() == 1) {
+                throw new IOException(OUT_OF_MEMORY);
+            }
+            return "updated";
+        });
+
+        assertThat(result).isEqualTo("updated");
+        assertThat(nodeOptions).hasSize(2);
+        assertThat(nodeOptions.get(0)).startsWith("--max-old-space-size=1024");
+        assertThat(nodeOptions.get(1)).startsWith("--max-old-space-size=2048");
+    }
+
+    @Test
+    void doesNotRetryACommandWhoseAttemptsCannotBeUndone() {
+        NodeMemoryScheduler scheduler = NodeMemoryScheduler.forBudget(64L * 1024 * 1024 * 1024);
+        List<String> nodeOptions = new ArrayList<>();
+
+        assertThatThrownBy(() -> scheduler.run(1024, Map.of("TERM", "dumb"), null, env -> {
+            nodeOptions.add(env.get("NODE_OPTIONS"));
+            throw new IOException(OUT_OF_MEMORY);
+        })).hasMessage(OUT_OF_MEMORY);
+        assertThat(nodeOptions).hasSize(1);
+    }
+
+    @Test
+    void retriedRunSeesTheOriginalTree() throws Exception {
+        assumeTrue(hasNode(), "needs node on the PATH");
+        Path workspace = Files.createDirectories(dir.resolve("workspace"));
+        Files.writeString(workspace.resolve("package.json"), "{\"dependencies\": {\"@angular/core\": \"^16.2.0\"}}");
+        Files.createDirectories(workspace.resolve("src"));
+        Files.writeString(workspace.resolve("src/main.ts"), "bootstrapModule(AppModule);");
+        Files.createDirectories(workspace.resolve("node_modules/@angular/core"));
+        Files.writeString(workspace.resolve("node_modules/@angular/core/package.json"), "{\"version\": \"16.2.0\"}");
+        NodeMemoryScheduler scheduler = NodeMemoryScheduler.forBudget(64L * 1024 * 1024 * 1024);
+
+        List<String> attempts = new ArrayList<>();
+        try (WorkspaceSnapshot snapshot = WorkspaceSnapshot.take(workspace, Files.createDirectories(dir.resolve("snapshot")))) {
+            scheduler.run(1024, Map.of("NODE_OPTIONS", BlobStore.nodeOptions(null)), snapshot::restore, env -> {
+                if (attempts.isEmpty()) {
+                    attempts.add("migrated part of the tree");
+                    // what `ng update` does before it runs out of heap part way through the migrations
+                    ProcessBuilder node = new ProcessBuilder("node", "-e",
+                      "const fs = require('fs');" +
+                      "fs.writeFileSync('package.json', '{\"dependencies\": {\"@angular/core\": \"^17.0.0\"}}');" +
+                      "fs.writeFileSync('node_modules/@angular/core/package.json', '{\"version\": \"17.0.0\"}');" +
+                      "fs.writeFileSync('src/app.config.ts', 'export const appConfig = {};');" +
+                      "fs.unlinkSync('src/main.ts');")
+                      .directory(workspace.toFile())
+                      .inheritIO();
+                    node.environment().putAll(env);
+                    assertThat(node.start().waitFor()).isZero();
+                    throw new IOException(OUT_OF_MEMORY);
+                }
+                attempts.add("started over");
+                assertThat(workspace.resolve("package.json")).hasContent("{\"dependencies\": {\"@angular/core\": \"^16.2.0\"}}");
+                assertThat(workspace.resolve("src/main.ts")).hasContent("bootstrapModule(AppModule);");
+                assertThat(workspace.resolve("src/app.config.ts")).doesNotExist();
+                return null;
+            });
+        }
+
+        assertThat(attempts).containsExactly("migrated part of the tree", "started over");
+        // installed packages are left for npm to reconcile
+        assertThat(workspace.resolve("node_modules/@angular/core/package.json")).hasContent("{\"version\": \"17.0.0\"}");
+        assertThat(dir.resolve("snapshot")).doesNotExist();
+    }
+
+    private static boolean hasNode() {
+        try {
+            return new ProcessBuilder("node", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class NodeModulesCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keyChangesWithLockfileAndNodeVersion() throws IOException {
+        Path project = Files.createDirectories(tempDir.resolve("project"));
+        assertThat(NodeModulesCache.key(project, "v20.11.0")).isNull();
+
+        Files.writeString(project.resolve("package-lock.json"), "{\"lockfileVersion\": 3}");
+        String key = NodeModulesCache.key(project, "v20.11.0");
+        assertThat(key)
+          .isEqualTo(NodeModulesCache.key(project, "v20.11.0"))
+          .isNotEqualTo(NodeModulesCache.key(project, "v18.19.0"));
+
+        Files.writeString(project.resolve(".npmrc"), "registry=https://registry.example.com/");
+        assertThat(NodeModulesCache.key(project, "v20.11.0")).isNotEqualTo(key);
+    }
+
+    @Test
+    void restoresStoredEntry() throws IOException {
+        NodeModulesCache cache = new NodeModulesCache(tempDir.resolve("cache"), 1024 * 1024);
+        Path installed = nodeModules(tempDir.resolve("installed"), "rxjs", 100);
+
+        assertThat(cache.restore("abc", tempDir.resolve("restored/node_modules"))).isFalse();
+        cache.store("abc", installed);
+
+        Path restored = tempDir.resolve("restored/node_modules");
+        assertThat(cache.restore("abc", restored)).isTrue();
+        assertThat(restored.resolve("rxjs/index.js")).hasSameBinaryContentAs(installed.resolve("rxjs/index.js"));
+    }
+
+    @Test
+    void changesInPlaceDoNotWriteThroughToTheCache() throws IOException {
+        NodeModulesCache cache = new NodeModulesCache(tempDir.resolve("cache"), 1024 * 1024);
+        Path installed = nodeModules(tempDir.resolve("installed"), "rxjs", 100);
+        Files.writeString(installed.resolve(".package-lock.json"), "{\"lockfileVersion\": 3}");
+        cache.store("abc", installed);
+        Path restored = tempDir.resolve("restored/node_modules");
+        assertThat(cache.restore("abc", restored)).isTrue();
+
+        // what npm does to the hidden lockfile after installing into either tree
+        Files.writeString(installed.resolve(".package-lock.json"), "{\"installed\": true}");
+        Files.writeString(restored.resolve(".package-lock.json"), "{\"restored\": true}");
+
+        assertThat(tempDir.resolve("cache/abc/node_modules/.package-lock.json")).hasContent("{\"lockfileVersion\": 3}");
+        assertThat(Files.isSameFile(restored.resolve("rxjs/index.js"), installed.resolve("rxjs/index.js"))).isTrue();
+    }
+
+    @Test
+    void nodeDoesNotWriteThroughToTheCache() throws Exception {
+        assumeTrue(hasNode(), "needs node on the PATH");
+        NodeModulesCache cache = new NodeModulesCache(tempDir.resolve("cache"), 1024 * 1024);
+        Path installed = nodeModules(tempDir.resolve("installed"), "rxjs", 100);
+        Files.writeString(installed.resolve("rxjs/package.json"), "{\"name\": \"rxjs\"}");
+        cache.store("abc", installed);
+        Path restored = tempDir.resolve("restored/node_modules");
+        assertThat(cache.restore("abc", restored)).isTrue();
+
+        // how npm changes package files and bin files in place
+        ProcessBuilder node = new ProcessBuilder("node", "-e",
+          "const fs = require('fs');" +
+          "fs.writeFileSync('rxjs/package.json', '{}');" +
+          "fs.writeFileSync('cli.js', 'bin');" +
+          "fs.copyFileSync('cli.js', 'rxjs/index.js');")
+          .directory(restored.toFile())
+          .inheritIO();
+        node.environment().put("NODE_OPTIONS", BlobStore.nodeOptions(null));
+        assertThat(node.start().waitFor()).isZero();
+
+        assertThat(restored.resolve("rxjs/package.json")).hasContent("{}");
+        assertThat(restored.resolve("rxjs/index.js")).hasContent("bin");
+        assertThat(tempDir.resolve("cache/abc/node_modules/rxjs/package.json")).hasContent("{\"name\": \"rxjs\"}");
+        assertThat(tempDir.resolve("cache/abc/node_modules/rxjs/index.js")).hasBinaryContent(new byte[100]);
+        assertThat(installed.resolve("rxjs/index.js")).hasBinaryContent(new byte[100]);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        NodeModulesCache cache = new NodeModulesCache(tempDir.resolve("cache"), 250);
+        cache.store("first", nodeModules(tempDir.resolve("a"), "a", 100));
+        cache.store("second", nodeModules(tempDir.resolve("b"), "b", 100));
+        Files.setLastModifiedTime(tempDir.resolve("cache/first/.last-used"), FileTime.fromMillis(0));
+
+        cache.store("third", nodeModules(tempDir.resolve("c"), "c", 100));
+
+        assertThat(tempDir.resolve("cache/first")).doesNotExist();
+        assertThat(tempDir.resolve("cache/second")).isDirectory();
+        assertThat(tempDir.resolve("cache/third")).isDirectory();
+    }
+
+    private static Path nodeModules(Path dir, String pkg, int size) throws IOException {
+        Path nodeModules = Files.createDirectories(dir.resolve("node_modules").resolve(pkg));
+        Files.write(nodeModules.resolve("index.js"), new byte[size]);
+        return dir.resolve("node_modules");
+    }
+
+    private static boolean hasNode() {
+        try {
+            return new ProcessBuilder("node", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NodeToolchainsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void installsOncePerResolvedVersion() {
+        NodeToolchains toolchains = new NodeToolchains(tempDir);
+        AtomicInteger installs = new AtomicInteger();
+
+        Path first = toolchains.provision("some-cli@18", prefix -> {
+            installs.incrementAndGet();
+            fakeInstall(prefix, "some-cli", "18.2.1");
+        });
+        Path second = toolchains.provision("some-cli@18.2.1", prefix -> {
+            throw new IllegalStateException("should not install an exact version twice");
+        });
+
+        assertThat(installs).hasValue(1);
+        assertThat(first).isEqualTo(second).hasFileName("some-cli@18.2.1");
+        assertThat(first.resolve("node_modules/some-cli/package.json")).isRegularFile();
+        assertThat(Files.getPosixFilePermissions(first.resolve("node_modules/some-cli")))
+          .doesNotContain(PosixFilePermission.OWNER_WRITE);
+    }
+
+    @Test
+    void fallsBackToStaleAliasWhenOffline() throws IOException {
+        NodeToolchains toolchains = new NodeToolchains(tempDir);
+        Path installed = toolchains.provision("some-cli@latest", prefix -> fakeInstall(prefix, "some-cli", "19.0.0"));
+        Files.setLastModifiedTime(tempDir.resolve(".aliases/some-cli@latest"), FileTime.fromMillis(0));
+
+        Path offline = toolchains.provision("some-cli@latest", prefix -> {
+            throw new IOException("registry unreachable");
+        });
+
+        assertThat(offline).isEqualTo(installed);
+    }
+
+    @Test
+    void reinstallsToolchainMissingACompanion() {
+        NodeToolchains toolchains = new NodeToolchains(tempDir);
+        toolchains.provision("some-gyp@10.1.0", prefix -> fakeInstall(prefix, "some-gyp", "10.1.0"));
+
+        Path complete = toolchains.provision("some-gyp@10.1.0", List.of("nan@2"), prefix -> {
+            fakeInstall(prefix, "some-gyp", "10.1.0");
+            fakeInstall(prefix, "nan", "2.22.0");
+        });
+
+        assertThat(complete.resolve("node_modules/nan/package.json")).isRegularFile();
+    }
+
+    @Test
+    void failsWithoutAnyResolution() {
+        NodeToolchains toolchains = new NodeToolchains(tempDir);
+        assertThatThrownBy(() -> toolchains.provision("some-cli@17", prefix -> {
+            throw new IOException("registry unreachable");
+        })).hasRootCauseInstanceOf(IOException.class);
+    }
+
+    private static void fakeInstall(Path prefix, String name, String version) throws IOException {
+        Path pkg = Files.createDirectories(prefix.resolve("node_modules").resolve(name));
+        Files.writeString(pkg.resolve("package.json"), "{\"name\": \"" + name + "\", \"version\": \"" + version + "\"}");
+    }
+}
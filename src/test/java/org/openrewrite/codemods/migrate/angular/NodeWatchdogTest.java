@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class NodeWatchdogTest {
+
+    @Test
+    void killsProcessTreeAtDeadline() throws Exception {
+        assumeTrue(Files.isDirectory(Paths.get("/proc/self")), "processes are only found where there is a /proc");
+        Map<String, String> environment = new HashMap<>();
+        try (ProcessTreeMonitor monitor = ProcessTreeMonitor.start(environment);
+             NodeWatchdog watchdog = NodeWatchdog.start(Duration.ofSeconds(1), null, monitor)) {
+            ProcessBuilder builder = new ProcessBuilder("sh", "-c", "sleep 60 & wait");
+            builder.environment().putAll(environment);
+            Process process = builder.start();
+
+            assertThat(process.waitFor()).isNotZero();
+            assertThat(watchdog.getExpiry()).isEqualTo(NodeWatchdog.Expiry.DEADLINE);
+        }
+    }
+
+    @Test
+    void killsIdleProcesses() throws Exception {
+        assumeTrue(Files.isDirectory(Paths.get("/proc/self")), "processes are only found where there is a /proc");
+        Map<String, String> environment = new HashMap<>();
+        try (ProcessTreeMonitor monitor = ProcessTreeMonitor.start(environment);
+             NodeWatchdog watchdog = NodeWatchdog.start(null, Duration.ofSeconds(1), monitor)) {
+            ProcessBuilder builder = new ProcessBuilder("sleep", "60");
+            builder.environment().putAll(environment);
+            Process process = builder.start();
+
+            assertThat(process.waitFor()).isNotZero();
+            assertThat(watchdog.getExpiry()).isEqualTo(NodeWatchdog.Expiry.IDLE);
+        }
+    }
+
+    @Test
+    void doesNotWatchPhaseWithoutTimeouts() throws Exception {
+        try (NodeWatchdog watchdog = NodeWatchdog.start(null, null, null)) {
+            assertThat(watchdog.isWatching()).isFalse();
+
+            Process process = new ProcessBuilder("sleep", "2").start();
+            assertThat(process.waitFor()).isZero();
+            assertThat(watchdog.getExpiry()).isNull();
+        }
+    }
+
+        @Test
+    void interruptsPhaseWithoutProcesses() {
+        try (NodeWatchdog watchdog = NodeWatchdog.start(Duration.ofMillis(100), null, null)) {
+            boolean interrupted = false;
+            try {
+                Thread.sleep(30_000);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            assertThat(interrupted).isTrue();
+            assertThat(watchdog.getExpiry()).isEqualTo(NodeWatchdog.Expiry.DEADLINE);
+        }
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+}
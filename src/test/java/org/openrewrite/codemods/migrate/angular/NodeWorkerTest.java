@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class NodeWorkerTest {
+
+    @TempDir
+    Path dir;
+
+    Path cli;
+
+    NodeMemoryScheduler scheduler = NodeMemoryScheduler.forBudget(8L * 1024 * 1024 * 1024);
+
+    @BeforeEach
+    void fakeCli() throws Exception {
+        assumeTrue(hasNode(), "node workers need node on the PATH");
+        cli = dir.resolve("cli");
+        Files.createDirectories(cli.resolve("lib/cli"));
+        Files.writeString(cli.resolve("package.json"), "{\"type\": \"module\"}");
+        Files.writeString(cli.resolve("lib/cli/index.js"), """
+          export default async function ({cliArgs}) {
+              console.log(`${cliArgs.join(' ')} in ${process.cwd()} with ${process.env.GREETING}`);
+              if (cliArgs[0] === 'fail') {
+                  process.exit(3);
+              }
+              return 0;
+          }
+          """);
+    }
+
+    @Test
+    void runsCommandsInOneWorker() throws Exception {
+        Path workspace = Files.createDirectories(dir.resolve("workspace"));
+        int idle = NodeWorker.idle();
+        Path first = NodeWorker.run(cli, workspace, List.of("update", "a"), Map.of("GREETING", "hello"), scheduler, 10, Long.MAX_VALUE, null);
+        assertThat(NodeWorker.idle()).isEqualTo(idle + 1);
+        Path second = NodeWorker.run(cli, workspace, List.of("update", "b"), Map.of("GREETING", "hi"), scheduler, 10, Long.MAX_VALUE, null);
+        assertThat(NodeWorker.idle()).isEqualTo(idle + 1);
+
+        assertThat(Files.readString(first)).isEqualTo("update a in " + workspace.toRealPath() + " with hello\n");
+        assertThat(Files.readString(second)).isEqualTo("update b in " + workspace.toRealPath() + " with hi\n");
+    }
+
+    @Test
+    void runsCommonJsCli() throws Exception {
+        // laid out like @angular/cli, whose entry point is CommonJS with a default export
+        Path commonJsCli = dir.resolve("node_modules/@angular/cli");
+        Files.createDirectories(commonJsCli.resolve("lib/cli"));
+        Files.writeString(commonJsCli.resolve("package.json"), "{\"name\": \"@angular/cli\", \"main\": \"lib/cli/index.js\"}");
+        Files.writeString(commonJsCli.resolve("lib/cli/index.js"), """
+          "use strict";
+          Object.defineProperty(exports, "__esModule", { value: true });
+          exports.default = default_1;
+          async function default_1(options) {
+              console.log(`${options.cliArgs.join(' ')} from commonjs`);
+              return 0;
+          }
+          """);
+
+        Path out = NodeWorker.run(commonJsCli, dir, List.of("update", "d"), Map.of(), scheduler, 10, Long.MAX_VALUE, null);
+        assertThat(Files.readString(out)).isEqualTo("update d from commonjs\n");
+    }
+
+    @Test
+    void streamsLines() throws Exception {
+        List<String> lines = new ArrayList<>();
+        NodeWorker.run(cli, dir, List.of("update", "c"), Map.of("GREETING", "hey"), scheduler, 10, Long.MAX_VALUE, lines::add);
+        assertThat(lines).containsExactly("update c in " + dir.toRealPath() + " with hey");
+    }
+
+    @Test
+    void recyclesWorkerAfterMaxJobs() throws Exception {
+        int idle = NodeWorker.idle();
+        NodeWorker.run(cli, dir, List.of("update"), Map.of(), scheduler, 1, Long.MAX_VALUE, null);
+        assertThat(NodeWorker.idle()).isEqualTo(idle);
+    }
+
+    @Test
+    void failsOnNonZeroExit() {
+        assertThatThrownBy(() -> NodeWorker.run(cli, dir, List.of("fail"), Map.of(), scheduler, 10, Long.MAX_VALUE, null))
+          .isInstanceOf(IOException.class)
+          .hasMessageContaining("exited with code 3")
+          .hasMessageContaining("fail in");
+    }
+
+    @Test
+    void idleWorkerMakesWayForCommandWaitingForMemory() throws Exception {
+        NodeMemoryScheduler small = NodeMemoryScheduler.forBudget(1100L * 1024 * 1024);
+        int idle = NodeWorker.idle();
+        NodeWorker.run(cli, dir, List.of("update"), Map.of(), small, 10, Long.MAX_VALUE, null);
+        assertThat(NodeWorker.idle()).isEqualTo(idle + 1);
+
+        // needs the whole budget, part of which the idle worker holds on to
+        small.run(2048, Map.of(), env -> {
+            assertThat(NodeWorker.idle()).isEqualTo(idle);
+            return null;
+        });
+    }
+
+    private static boolean hasNode() {
+        try {
+            return new ProcessBuilder("node", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
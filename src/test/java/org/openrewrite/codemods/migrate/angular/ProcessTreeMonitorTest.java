@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ProcessTreeMonitorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void measuresOnlyTheProcessesOfThePhase() throws Exception {
+        Map<String, String> environment = new HashMap<>();
+        ProcessTreeMonitor monitor = ProcessTreeMonitor.start(environment);
+        assumeTrue(monitor != null, "processes are only measured where there is a /proc");
+        try {
+            // another phase's process, which writes as much without the tag
+            Process other = new ProcessBuilder("sh", "-c", "{ " + WRITE_4MB + "; } > other")
+              .directory(dir.toFile())
+              .start();
+            ProcessBuilder builder = new ProcessBuilder("sh", "-c", "{ " + WRITE_4MB + "; } > out")
+              .directory(dir.toFile());
+            builder.environment().putAll(environment);
+            assertThat(builder.start().waitFor()).isZero();
+            assertThat(other.waitFor()).isZero();
+        } finally {
+            monitor.close();
+        }
+
+        assertThat(monitor.getBytesWritten()).isBetween(4_000_000L, 8_000_000L - 1);
+        assertThat(monitor.getPeakRssBytes()).isPositive();
+        assertThat(monitor.getCpuMillis()).isNotNegative();
+    }
+
+    @Test
+    void countsTheCpuTimeOfChildrenShorterThanASample() throws Exception {
+        Map<String, String> environment = new HashMap<>();
+        ProcessTreeMonitor monitor = ProcessTreeMonitor.start(environment);
+        assumeTrue(monitor != null, "processes are only measured where there is a /proc");
+        try {
+            // five children that each keep a CPU busy for 100 ms, less than the time between two samples
+            ProcessBuilder builder = new ProcessBuilder("sh", "-c",
+              "for i in 1 2 3 4 5; do sh -c '" + BUSY_100MS + "'; done; sleep 1");
+            builder.environment().putAll(environment);
+            assertThat(builder.start().waitFor()).isZero();
+        } finally {
+            monitor.close();
+        }
+
+        assertThat(monitor.getCpuMillis()).isGreaterThanOrEqualTo(250);
+    }
+
+    private static final String BUSY_100MS = "end=$(($(date +%s%N) + 100000000)); while [ $(date +%s%N) -lt $end ]; do :; done";
+
+    /**
+     * Writes 4 MB from the shell itself, which then lives on for another second, so that a sample
+     * sees its writes.
+     */
+    private static final String WRITE_4MB = "i=0; while [ $i -lt 1000 ]; do printf '%4000s' x; i=$((i+1)); done; sleep 1";
+}
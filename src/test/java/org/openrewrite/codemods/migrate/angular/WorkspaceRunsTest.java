@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.codemods.migrate.angular;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WorkspaceRunsTest {
+
+    @TempDir
+    Path repo;
+
+    @Test
+    void nestedWorkspacesRunAfterTheWorkspaceContainingThem() {
+        assertThat(WorkspaceRuns.groups(List.of(
+          Paths.get("apps/admin/angular.json"),
+          Paths.get("apps/shop/angular.json"),
+          Paths.get("apps/shop/legacy/angular.json"))))
+          .containsExactly(
+            List.of(Paths.get("apps/admin/angular.json")),
+            List.of(Paths.get("apps/shop/angular.json"), Paths.get("apps/shop/legacy/angular.json")));
+
+        assertThat(WorkspaceRuns.groups(List.of(Paths.get("apps/admin/angular.json"), Paths.get("angular.json"))))
+          .containsExactly(List.of(Paths.get("angular.json"), Paths.get("apps/admin/angular.json")));
+    }
+
+    @Test
+    void reportsSharedFilesChangedByConcurrentWorkspaces() throws Exception {
+        Files.writeString(repo.resolve("tsconfig.base.json"), "{}");
+        List<Path> workspaces = List.of(Paths.get("apps/admin/angular.json"), Paths.get("apps/shop/angular.json"));
+        WorkspaceRuns runs = new WorkspaceRuns(repo, workspaces,
+          List.of(Paths.get("tsconfig.base.json"), Paths.get("apps/admin/src/main.ts"), Paths.get("apps/shop/src/main.ts")));
+
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Map<Path, Path> outputs = runs.run(2, (angularJsonPath, environment) -> {
+            bothStarted.countDown();
+            assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            write(repo.resolve("tsconfig.base.json"), "{\"extends\": \"" + angularJsonPath + "\"}", environment);
+            return repo.resolve(angularJsonPath.getParent().getFileName() + ".log");
+        });
+
+        assertThat(outputs).containsOnlyKeys(workspaces);
+        assertThat(runs.conflicts()).containsExactly(new WorkspaceRuns.Conflict(Paths.get("tsconfig.base.json"), workspaces));
+    }
+
+    @Test
+    void sharedFileChangedByOneOfTwoConcurrentWorkspacesIsNoConflict() throws Exception {
+        Files.writeString(repo.resolve("tsconfig.base.json"), "{}");
+        List<Path> workspaces = List.of(Paths.get("apps/admin/angular.json"), Paths.get("apps/shop/angular.json"));
+        WorkspaceRuns runs = new WorkspaceRuns(repo, workspaces,
+          List.of(Paths.get("tsconfig.base.json"), Paths.get("apps/admin/src/main.ts"), Paths.get("apps/shop/src/main.ts")));
+
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch written = new CountDownLatch(1);
+        runs.run(2, (angularJsonPath, environment) -> {
+            bothStarted.countDown();
+            assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            if (angularJsonPath.startsWith("apps/admin")) {
+                write(repo.resolve("tsconfig.base.json"), "{\"extends\": \"admin\"}", environment);
+                written.countDown();
+            } else {
+                // still running when the other workspace writes the file
+                assertThat(written.await(10, TimeUnit.SECONDS)).isTrue();
+            }
+            return repo.resolve(angularJsonPath.getParent().getFileName() + ".log");
+        });
+
+        assertThat(runs.conflicts()).isEmpty();
+    }
+
+    /**
+     * Write a file like a node process preloading the script of {@link BlobStore#nodeOptions} would.
+     */
+    private static void write(Path file, String content, Map<String, String> environment) throws IOException {
+        Files.writeString(file, content);
+        Files.writeString(Paths.get(environment.get(WorkspaceRuns.WRITE_LOG)), file.toAbsolutePath() + "\n",
+          StandardOpenOption.APPEND);
+    }
+}
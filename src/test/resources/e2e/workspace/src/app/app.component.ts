@@ -0,0 +1,10 @@
+import {Component} from '@angular/core';
+
+@Component({
+  selector: 'app-root',
+  standalone: true,
+  template: '<h1>{{ title }}</h1>'
+})
+export class AppComponent {
+  title = 'e2e-sample';
+}
@@ -0,0 +1,4 @@
+import {bootstrapApplication} from '@angular/platform-browser';
+import {AppComponent} from './app/app.component';
+
+bootstrapApplication(AppComponent).catch(err => console.error(err));